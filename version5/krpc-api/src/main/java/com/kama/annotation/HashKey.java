@@ -0,0 +1,19 @@
+package com.kama.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @ClassName HashKey
+ * @Description 标记一致性哈希路由使用的参数，参数值相同的请求总是落到同一个服务提供者
+ * 按参数的 toString 计算哈希，参数类型的 toString 需只与取值有关（如 Integer、String、Long）
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 10:00
+ * @Version v5.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface HashKey {
+}
@@ -0,0 +1,19 @@
+package com.kama.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @ClassName Timeout
+ * @Description 方法级调用超时（毫秒），覆盖配置中的默认超时
+ * @Author Tong
+ * @LastChangeDate 2024-12-10 10:05
+ * @Version v5.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Timeout {
+    long value();
+}
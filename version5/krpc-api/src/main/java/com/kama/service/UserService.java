@@ -1,24 +1,33 @@
 package com.kama.service;
 
 
+import com.kama.annotation.HashKey;
 import com.kama.annotation.Retryable;
+import com.kama.annotation.Timeout;
 import com.kama.pojo.User;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @InterfaceName UserService
  * @Description 接口
  * @Author Tong
- * @LastChangeDate 2024-12-05 0:52
+ * @LastChangeDate 2024-12-15 10:00
  * @Version v1.0
  */
 
 public interface UserService {
 
-    // 查询
+    // 查询，同一用户的请求按id路由到同一个服务提供者
     @Retryable
-    User getUserByUserId(Integer id);
+    User getUserByUserId(@HashKey Integer id);
 
     // 新增
     @Retryable
     Integer insertUserId(User user);
+
+    // 异步查询，返回CompletableFuture的方法由客户端代理异步调用
+    @Retryable
+    @Timeout(3000)
+    CompletableFuture<User> getUserByUserIdAsync(@HashKey Integer id);
 }
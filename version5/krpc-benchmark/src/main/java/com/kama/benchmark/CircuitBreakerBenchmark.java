@@ -0,0 +1,147 @@
+package com.kama.benchmark;
+
+import com.kama.client.circuitbreaker.CircuitBreaker;
+import com.kama.client.circuitbreaker.CircuitBreakerState;
+import com.kama.client.circuitbreaker.impl.SlidingWindowCircuitBreaker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName CircuitBreakerBenchmark
+ * @Description 多线程争用同一个熔断器时的吞吐：加锁的旧实现与滑动窗口实现对比
+ * 每次操作为一次放行检查加一次结果记录，失败比例远低于阈值，熔断器始终处于关闭状态，测量的是正常调用路径的开销
+ * main 中依次以 1~64 个线程运行；命令行运行时用 -t 指定线程数
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 22:30
+ * @Version v5.0
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CircuitBreakerBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    //约千分之一的调用失败
+    private static final int FAILURE_ONE_IN = 1000;
+
+    @Param({"synchronized", "slidingwindow"})
+    private String impl;
+
+    private CircuitBreaker circuitBreaker;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        circuitBreaker = "slidingwindow".equals(impl)
+                ? new SlidingWindowCircuitBreaker("benchmark")
+                // 旧实现失败一次即开启，这里把阈值设高使其保持关闭
+                : new SynchronizedCircuitBreaker(Integer.MAX_VALUE, 0.5, 10000);
+    }
+
+    @Benchmark
+    public boolean allowAndRecord() {
+        // 与客户端调用路径一致：放行时取得许可，用许可上报结果
+        Object permission = circuitBreaker.acquirePermission();
+        if (permission != null) {
+            if (ThreadLocalRandom.current().nextInt(FAILURE_ONE_IN) == 0) {
+                circuitBreaker.recordFailure(permission, 1000L);
+            } else {
+                circuitBreaker.recordSuccess(permission, 1000L);
+            }
+        }
+        return permission != null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(CircuitBreakerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    // 原实现：按失败次数开启，三个方法都获取同一个监视器锁；去掉了逐次的日志，只比较加锁本身的开销
+    public static class SynchronizedCircuitBreaker implements CircuitBreaker {
+        private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+        private int failureCount;
+        private int successCount;
+        private int requestCount;
+        private final int failureThreshold;
+        private final double halfOpenSuccessRate;
+        private final long retryTimePeriod;
+        private long lastFailureTime;
+
+        public SynchronizedCircuitBreaker(int failureThreshold, double halfOpenSuccessRate, long retryTimePeriod) {
+            this.failureThreshold = failureThreshold;
+            this.halfOpenSuccessRate = halfOpenSuccessRate;
+            this.retryTimePeriod = retryTimePeriod;
+        }
+
+        //旧实现不区分阶段，许可只表示放行
+        @Override
+        public Object acquirePermission() {
+            return allowRequest() ? this : null;
+        }
+
+        @Override
+        public synchronized boolean allowRequest() {
+            switch (state) {
+                case OPEN:
+                    if (System.currentTimeMillis() - lastFailureTime > retryTimePeriod) {
+                        state = CircuitBreakerState.HALF_OPEN;
+                        resetCounts();
+                        return true;
+                    }
+                    return false;
+                case HALF_OPEN:
+                    requestCount++;
+                    return true;
+                case CLOSED:
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public synchronized void recordSuccess() {
+            if (state == CircuitBreakerState.HALF_OPEN) {
+                successCount++;
+                if (successCount >= halfOpenSuccessRate * requestCount) {
+                    state = CircuitBreakerState.CLOSED;
+                    resetCounts();
+                }
+            } else {
+                resetCounts();
+            }
+        }
+
+        @Override
+        public synchronized void recordFailure() {
+            failureCount++;
+            lastFailureTime = System.currentTimeMillis();
+            if (state == CircuitBreakerState.HALF_OPEN || failureCount >= failureThreshold) {
+                state = CircuitBreakerState.OPEN;
+            }
+        }
+
+        private void resetCounts() {
+            failureCount = 0;
+            successCount = 0;
+            requestCount = 0;
+        }
+
+        @Override
+        public synchronized CircuitBreakerState getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.kama.benchmark;
+
+import com.kama.pojo.User;
+import com.kama.server.provider.MethodInvoker;
+import com.kama.server.provider.ServiceInvokers;
+import com.kama.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName InvokerBenchmark
+ * @Description 服务端调用服务方法的开销：每次 getMethod + Method.invoke 与预先构建的 MethodHandle 调用表对比
+ * 服务实现为空操作，只测量查找与调用本身
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 18:30
+ * @Version v5.0
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InvokerBenchmark {
+    private static final String INTERFACE_NAME = UserService.class.getName();
+    private static final String METHOD_NAME = "insertUserId";
+
+    private UserService service;
+    private ServiceInvokers serviceInvokers;
+    private Class<?>[] paramsType;
+    private Object[] params;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = new NoopUserService();
+        serviceInvokers = new ServiceInvokers();
+        serviceInvokers.register(UserService.class, service);
+        paramsType = new Class<?>[]{User.class};
+        params = new Object[]{User.builder().id(1).userName("benchmark-user").gender(true).build()};
+    }
+
+    // 原实现：每个请求都按名称与参数类型查找方法再反射调用
+    @Benchmark
+    public Object reflect() throws Exception {
+        Method method = service.getClass().getMethod(METHOD_NAME, paramsType);
+        return method.invoke(service, params);
+    }
+
+    // 调用表：查找预先构建的调用器后直接调用
+    @Benchmark
+    public Object invokerTable() throws Exception {
+        MethodInvoker invoker = serviceInvokers.get(INTERFACE_NAME, METHOD_NAME, paramsType);
+        return invoker.invoke(params);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InvokerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    // 不做任何事的服务实现
+    public static class NoopUserService implements UserService {
+        @Override
+        public User getUserByUserId(Integer id) {
+            return null;
+        }
+
+        @Override
+        public Integer insertUserId(User user) {
+            return user.getId();
+        }
+
+        @Override
+        public CompletableFuture<User> getUserByUserIdAsync(Integer id) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.kama.benchmark;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.LoadBalance;
+import com.kama.client.servicecenter.balance.LoadBalanceFactory;
+import com.kama.config.KRpcConfig;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName LoadBalanceSimulation
+ * @Description 负载均衡的尾延迟模拟：多个服务提供者中有一个变慢时，各负载均衡策略下客户端看到的延迟分布
+ * 每个提供者用信号量模拟有限的处理线程，用 sleep 模拟处理耗时；客户端为闭环调用的虚拟线程，
+ * 请求经过真实的 LoadBalance 选择，并像 ClientProxy 一样维护 Endpoint 的在途请求数与延迟统计
+ * 不是 JMH 基准（JMH 不统计自定义的延迟分位数），运行方式：
+ * java -cp krpc-benchmark/target/benchmarks.jar com.kama.benchmark.LoadBalanceSimulation [秒数]
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 18:00
+ * @Version v5.0
+ */
+public class LoadBalanceSimulation {
+    //提供者数量，第 0 个为变慢的提供者
+    private static final int PROVIDERS = 5;
+    //每个提供者的处理线程数
+    private static final int PROVIDER_THREADS = 8;
+    //正常提供者的平均处理耗时
+    private static final long NORMAL_MICROS = 1000;
+    //变慢的提供者的平均处理耗时
+    private static final long SLOW_MICROS = 20000;
+    //并发客户端数
+    private static final int CLIENTS = 64;
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        System.out.printf("providers=%d (provider 0 slowed %dus -> %dus), clients=%d, %ds per balancer%n",
+                PROVIDERS, NORMAL_MICROS, SLOW_MICROS, CLIENTS, seconds);
+        for (String name : new String[]{LoadBalanceFactory.ROUND, LoadBalanceFactory.LEAST_ACTIVE, LoadBalanceFactory.PEAK_EWMA}) {
+            run(name, TimeUnit.SECONDS.toNanos(seconds));
+        }
+    }
+
+    private static void run(String name, long durationNanos) throws Exception {
+        KRpcConfig config = new KRpcConfig();
+        config.setLoadBalance(name);
+        LoadBalance loadBalance = LoadBalanceFactory.create(config);
+
+        // 每轮使用新的服务名，Endpoint 的统计从零开始
+        String serviceName = "simulation." + name + "." + System.nanoTime();
+        ServiceCache cache = new ServiceCache();
+        for (int i = 0; i < PROVIDERS; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (20000 + i));
+        }
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Map<Endpoint, Integer> indexes = new IdentityHashMap<>();
+        Semaphore[] providers = new Semaphore[PROVIDERS];
+        for (int i = 0; i < PROVIDERS; i++) {
+            indexes.put(snapshot.getEndpoint(i), i);
+            providers[i] = new Semaphore(PROVIDER_THREADS);
+        }
+
+        long deadline = System.nanoTime() + durationNanos;
+        Future<?>[] futures = new Future<?>[CLIENTS];
+        Recorder[] recorders = new Recorder[CLIENTS];
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                Recorder recorder = recorders[c] = new Recorder();
+                futures[c] = clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        Endpoint endpoint = loadBalance.select(snapshot);
+                        int index = indexes.get(endpoint);
+                        long start = System.nanoTime();
+                        endpoint.getStats().beginRequest();
+                        serve(providers[index], index == 0 ? SLOW_MICROS : NORMAL_MICROS);
+                        long rtt = System.nanoTime() - start;
+                        endpoint.getStats().endRequest(rtt);
+                        recorder.record(rtt, index == 0);
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        Recorder total = new Recorder();
+        for (Recorder recorder : recorders) {
+            total.merge(recorder);
+        }
+        long[] samples = Arrays.copyOf(total.samples, total.size);
+        Arrays.sort(samples);
+        System.out.printf("%-12s requests=%-8d p50=%8.2fms p99=%8.2fms p999=%8.2fms slow-provider-share=%5.2f%%%n",
+                name, samples.length, percentile(samples, 0.50), percentile(samples, 0.99), percentile(samples, 0.999),
+                100.0 * total.slowCount / Math.max(samples.length, 1));
+    }
+
+    //在提供者上排队并处理一个请求，处理耗时在平均值的 0.5 ~ 1.5 倍之间均匀分布
+    private static void serve(Semaphore provider, long meanMicros) throws InterruptedException {
+        provider.acquire();
+        try {
+            long micros = (long) (meanMicros * (0.5 + ThreadLocalRandom.current().nextDouble()));
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } finally {
+            provider.release();
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    // 单个客户端的延迟样本，只由该客户端线程写入
+    private static final class Recorder {
+        private long[] samples = new long[1024];
+        private int size;
+        private long slowCount;
+
+        private void record(long rttNanos, boolean slow) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = rttNanos;
+            if (slow) {
+                slowCount++;
+            }
+        }
+
+        private void merge(Recorder other) {
+            for (int i = 0; i < other.size; i++) {
+                if (size == samples.length) {
+                    samples = Arrays.copyOf(samples, size * 2);
+                }
+                samples[size++] = other.samples[i];
+            }
+            slowCount += other.slowCount;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.kama.benchmark;
+
+import com.kama.server.ratelimit.RateLimit;
+import com.kama.server.ratelimit.impl.TokenBucketRateLimitImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName RateLimitBenchmark
+ * @Description 多线程争用同一个限流器时的吞吐：加锁的旧实现与 CAS 实现对比
+ * main 中依次以 1~64 个线程运行；命令行运行时用 -t 指定线程数
+ * 速率设得足够高，测量的是取令牌本身的开销而不是被拒绝的比例
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 18:00
+ * @Version v5.0
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimitBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"synchronized", "cas"})
+    private String impl;
+
+    private RateLimit rateLimit;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 每秒一亿个令牌，桶容量一百万
+        rateLimit = "cas".equals(impl)
+                ? TokenBucketRateLimitImpl.perSecond(100_000_000, 1_000_000)
+                : new SynchronizedTokenBucket(100_000_000, 1_000_000);
+    }
+
+    @Benchmark
+    public boolean getToken() {
+        return rateLimit.getToken();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(RateLimitBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    // 原实现：每次取令牌都获取同一个监视器锁
+    public static class SynchronizedTokenBucket implements RateLimit {
+        private final long nanosPerToken;
+        private final int capacity;
+        private long tokens;
+        private long lastTimestamp;
+
+        public SynchronizedTokenBucket(long permitsPerSecond, int capacity) {
+            this.nanosPerToken = Math.max(1L, TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastTimestamp = System.nanoTime();
+        }
+
+        @Override
+        public synchronized boolean getToken() {
+            long now = System.nanoTime();
+            long generated = (now - lastTimestamp) / nanosPerToken;
+            if (generated > 0) {
+                tokens = Math.min(capacity, tokens + generated);
+                lastTimestamp += generated * nanosPerToken;
+            }
+            if (tokens > 0) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
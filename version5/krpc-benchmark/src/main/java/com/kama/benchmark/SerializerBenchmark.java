@@ -0,0 +1,105 @@
+package com.kama.benchmark;
+
+import com.kama.pojo.User;
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import common.serializer.myserializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName SerializerBenchmark
+ * @Description 各序列化器编解码完整请求/响应消息的耗时与单次分配
+ * 单次分配看 gc 分析器输出的 gc.alloc.rate.norm（B/op），命令行运行时加 -prof gc
+ * @Author Tong
+ * @LastChangeDate 2024-12-12 15:20
+ * @Version v5.0
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializerBenchmark {
+
+    @Param({"Hessian", "Protostuff", "Kryo", "Json"})
+    private String serializerName;
+
+    private Serializer serializer;
+    private RpcRequest request;
+    private RpcResponse response;
+    //编码的目标缓冲区，每次调用前清空复用
+    private ByteBuf out;
+    //预先编码好的消息，反序列化时重复读取
+    private ByteBuf requestBytes;
+    private ByteBuf responseBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        serializer = Serializer.getSerializerByName(serializerName);
+        User user = User.builder().id(1).userName("benchmark-user").gender(true).build();
+        request = RpcRequest.builder()
+                .interfaceName("com.kama.service.UserService")
+                .methodName("insertUserId")
+                .params(new Object[]{user})
+                .paramsType(new Class<?>[]{User.class})
+                .requestId(1)
+                .build();
+        response = RpcResponse.sussess(user);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        requestBytes = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        serializer.serialize(request, requestBytes);
+        responseBytes = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        serializer.serialize(response, responseBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        out.release();
+        requestBytes.release();
+        responseBytes.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeRequest() {
+        out.clear();
+        serializer.serialize(request, out);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf serializeResponse() {
+        out.clear();
+        serializer.serialize(response, out);
+        return out;
+    }
+
+    @Benchmark
+    public Object deserializeRequest() {
+        requestBytes.readerIndex(0);
+        return serializer.deserialize(requestBytes, 0);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() {
+        responseBytes.readerIndex(0);
+        return serializer.deserialize(responseBytes, 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
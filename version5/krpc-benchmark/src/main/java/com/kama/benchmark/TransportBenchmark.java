@@ -0,0 +1,107 @@
+package com.kama.benchmark;
+
+import com.kama.KRpcApplication;
+import com.kama.client.rpcclient.impl.NettyRpcClient;
+import com.kama.config.KRpcConfig;
+import com.kama.provider.impl.UserServiceImpl;
+import com.kama.server.provider.ServiceProvider;
+import com.kama.server.server.impl.NettyRpcServer;
+import com.kama.service.UserService;
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName TransportBenchmark
+ * @Description 端到端对比 nio/epoll/io_uring 传输：同一台机器上启动服务端与客户端，测量一次完整调用
+ * 运行前需要启动本地zookeeper（服务端启动时会注册服务）
+ * 原生传输不可用时会回退为nio，以启动日志中的实际传输实现为准
+ * @Author Tong
+ * @LastChangeDate 2024-12-10 15:40
+ * @Version v5.0
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TransportBenchmark {
+    private static final String HOST = "127.0.0.1";
+    private static final int PORT = 19999;
+
+    @Param({"nio", "epoll", "io_uring"})
+    private String transport;
+
+    private NettyRpcServer server;
+    private NettyRpcClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        // 每个参数在独立的JVM中运行，客户端静态初始化时读取到对应的传输配置
+        KRpcConfig config = new KRpcConfig();
+        config.setTransport(transport);
+        KRpcApplication.initialize(config);
+
+        ServiceProvider serviceProvider = new ServiceProvider(HOST, PORT);
+        serviceProvider.provideServiceInterface(new UserServiceImpl());
+        // 关闭限流，避免测到的是限流降级路径
+        serviceProvider.getRateLimitProvider().setRateLimit(UserService.class.getName(), () -> true);
+        server = new NettyRpcServer(serviceProvider);
+        Thread serverThread = new Thread(() -> server.start(PORT), "benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        client = new NettyRpcClient(new InetSocketAddress(HOST, PORT));
+        // 等待服务端绑定端口
+        RpcResponse response = null;
+        for (int i = 0; i < 50 && (response == null || response.getCode() != 200); i++) {
+            Thread.sleep(100);
+            response = client.sendRequest(newRequest());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    //单线程调用延迟
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public RpcResponse latency() {
+        return client.sendRequest(newRequest());
+    }
+
+    //多线程并发调用吞吐
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public RpcResponse throughput() {
+        return client.sendRequest(newRequest());
+    }
+
+    //每次调用都构建新的请求，请求ID由客户端写入请求对象
+    private static RpcRequest newRequest() {
+        return RpcRequest.builder()
+                .interfaceName(UserService.class.getName())
+                .methodName("getUserByUserId")
+                .params(new Object[]{1})
+                .paramsType(new Class<?>[]{Integer.class})
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TransportBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,20 @@
+package common.message;
+
+/**
+ * @ClassName Heartbeat
+ * @Description 心跳消息，编码为带心跳标志、无消息体的v2帧，对端解码时直接丢弃
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 16:00
+ * @Version v5.0
+ */
+public final class Heartbeat {
+    public static final Heartbeat INSTANCE = new Heartbeat();
+
+    private Heartbeat() {
+    }
+
+    @Override
+    public String toString() {
+        return "Heartbeat";
+    }
+}
@@ -0,0 +1,116 @@
+package common.message;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName ProviderMetadata
+ * @Description 服务提供者发布在注册中心地址节点上的元数据，以 JSON 保存为节点数据，如 {"weight":32,"startTime":...,"warmup":60000}
+ * 旧版本提供者的节点没有数据，解析为默认元数据；未知字段忽略，便于之后增加字段
+ * 默认权重按可用处理器数：未配置权重的提供者按本机处理器数发布，旧版本提供者无从得知其规格，按与客户端同等规格估计，
+ * 两者规则一致，旧提供者不会因权重为1而几乎分不到流量
+ * 提供者刚启动时 JIT 尚未预热，按启动时长在预热时间内线性提升有效权重（小流量预热）
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 15:00
+ * @Version v5.0
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class ProviderMetadata {
+    //默认权重：未配置权重的提供者发布的权重，也是未发布权重的旧提供者的权重
+    public static final int DEFAULT_WEIGHT = Runtime.getRuntime().availableProcessors();
+    public static final ProviderMetadata DEFAULT = new ProviderMetadata(DEFAULT_WEIGHT);
+
+    private static final String WEIGHT = "weight";
+    private static final String START_TIME = "startTime";
+    private static final String WARMUP = "warmup";
+
+    //权重，按权重分配请求的负载均衡使用，至少为1
+    private final int weight;
+    //提供者启动时间（毫秒时间戳），0为未知
+    private final long startTime;
+    //预热时长（毫秒），0为不预热
+    private final long warmup;
+
+    public ProviderMetadata(int weight) {
+        this(weight, 0L, 0L);
+    }
+
+    public ProviderMetadata(int weight, long startTime, long warmup) {
+        this.weight = Math.max(weight, 1);
+        this.startTime = Math.max(startTime, 0L);
+        this.warmup = Math.max(warmup, 0L);
+    }
+
+    //按本机可用的处理器数作为权重，即默认权重
+    public static ProviderMetadata ofLocalHost() {
+        return new ProviderMetadata(DEFAULT_WEIGHT);
+    }
+
+    //带上启动时间与预热时长的副本
+    public ProviderMetadata withWarmup(long startTime, long warmup) {
+        return new ProviderMetadata(weight, startTime, warmup);
+    }
+
+    /**
+     * 当前时刻的有效权重：预热期内为 权重 × 已启动时长 / 预热时长，至少为1；预热结束后为权重
+     * 启动时间由提供者的时钟记录，两端时钟偏差会使预热提前或推迟结束，偏差远小于预热时长时可忽略
+     */
+    public int getEffectiveWeight(long nowMillis) {
+        return getWarmupWeight(nowMillis, weight);
+    }
+
+    /**
+     * 只按预热进度缩放 fullWeight：预热期内为 fullWeight × 已启动时长 / 预热时长，至少为1；预热结束后为 fullWeight
+     * 不使用发布的权重，供不按权重分配请求、只需让预热中的提供者少分流量的负载均衡使用
+     */
+    public int getWarmupWeight(long nowMillis, int fullWeight) {
+        if (!isWarmingUp(nowMillis)) {
+            return fullWeight;
+        }
+        long uptime = Math.max(nowMillis - startTime, 0L);
+        return (int) Math.max(1L, fullWeight * uptime / warmup);
+    }
+
+    //是否处于预热期
+    public boolean isWarmingUp(long nowMillis) {
+        return startTime > 0 && warmup > 0 && nowMillis - startTime < warmup;
+    }
+
+    //预热结束的时间（毫秒时间戳），不预热时为0
+    public long getWarmupEndTime() {
+        return startTime > 0 && warmup > 0 ? startTime + warmup : 0L;
+    }
+
+    public byte[] toBytes() {
+        JSONObject json = new JSONObject();
+        json.put(WEIGHT, weight);
+        if (startTime > 0) {
+            json.put(START_TIME, startTime);
+            json.put(WARMUP, warmup);
+        }
+        return json.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //解析节点数据，为空或格式错误时返回默认元数据
+    public static ProviderMetadata parse(byte[] data) {
+        if (data == null || data.length == 0) {
+            return DEFAULT;
+        }
+        try {
+            JSONObject json = JSON.parseObject(new String(data, StandardCharsets.UTF_8));
+            if (json == null || !json.containsKey(WEIGHT)) {
+                return DEFAULT;
+            }
+            return new ProviderMetadata(json.getIntValue(WEIGHT), json.getLongValue(START_TIME), json.getLongValue(WARMUP));
+        } catch (RuntimeException e) {
+            return DEFAULT;
+        }
+    }
+}
@@ -28,4 +28,7 @@ public class RpcRequest implements Serializable {
     private Object[] params;
 
     private Class<?>[] paramsType;
+
+    //请求ID，复用连接时用于匹配对应的响应
+    private long requestId;
 }
@@ -11,7 +11,7 @@ import java.io.Serializable;
  * @ClassName RpcResponse
  * @Description 定义响应消息格式
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:14
+ * @LastChangeDate 2024-12-18 09:30
  * @Version v5.0
  */
 @NoArgsConstructor
@@ -26,12 +26,31 @@ public class RpcResponse implements Serializable {
     private Class<?> dataType;
     //具体数据
     private Object data;
+    //对应请求的ID，由服务端原样带回
+    private long requestId;
 
+    //服务方法返回 null 时没有数据类型
     public static RpcResponse sussess(Object data) {
-        return RpcResponse.builder().code(200).dataType(data.getClass()).data(data).build();
+        return RpcResponse.builder().code(200).dataType(data != null ? data.getClass() : null).data(data).build();
     }
 
+    //服务端或传输层的失败
     public static RpcResponse fail(String msg) {
         return RpcResponse.builder().code(500).message(msg).build();
     }
+
+    //服务方法抛出异常、方法不存在、参数不匹配或请求无法解码：调用本身的错误，与服务实例是否健康无关
+    public static RpcResponse serviceError(String msg) {
+        return RpcResponse.builder().code(400).message(msg).build();
+    }
+
+    //请求被服务端限流拒绝
+    public static RpcResponse rateLimited(String msg) {
+        return RpcResponse.builder().code(429).message(msg).build();
+    }
+
+    //客户端等待超时，与服务端返回的失败区分开
+    public static RpcResponse timeout(String msg) {
+        return RpcResponse.builder().code(504).message(msg).build();
+    }
 }
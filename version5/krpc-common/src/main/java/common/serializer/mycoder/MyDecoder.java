@@ -3,56 +3,189 @@ package common.serializer.mycoder;
 
 import common.exception.SerializeException;
 import common.message.MessageType;
+import common.message.RpcRequest;
+import common.message.RpcResponse;
 import common.serializer.myserializer.Serializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.Attribute;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Arrays;
 import java.util.List;
 
 /**
  * @ClassName MyDecoder
- * @Description 解码器
+ * @Description 解码器，同时支持v1与v2帧格式
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:32
+ * @LastChangeDate 2024-12-18 10:30
  * @Version v5.0
  */
 @Slf4j
 public class MyDecoder extends ByteToMessageDecoder {
+    // 默认最大帧长度 8MB
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    private final int maxFrameLength;
+
+    public MyDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public MyDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> out) throws Exception {
-        //检查可读字节数
-        if (in.readableBytes() < 6) {  // messageType + serializerType + length
+        //至少要能区分版本
+        if (in.readableBytes() < 2) {
+            return;
+        }
+        //只查看帧头，不移动读指针，整帧到齐之前不消费任何数据
+        int readerIndex = in.readerIndex();
+        if (ProtocolHeader.isV2(in, readerIndex)) {
+            decodeV2(channelHandlerContext, in, readerIndex, out);
+        } else {
+            decodeV1(channelHandlerContext, in, readerIndex, out);
+        }
+    }
+
+    private void decodeV2(ChannelHandlerContext ctx, ByteBuf in, int readerIndex, List<Object> out) {
+        if (in.readableBytes() < ProtocolHeader.V2_HEADER_LENGTH) {
+            return;
+        }
+        byte version = ProtocolHeader.version(in, readerIndex);
+        if (version != ProtocolHeader.VERSION_2) {
+            throw new CorruptedFrameException("不支持的协议版本: " + version);
+        }
+        int length = ProtocolHeader.length(in, readerIndex);
+        byte flags = ProtocolHeader.flags(in, readerIndex);
+        boolean heartbeat = ProtocolHeader.hasFlag(flags, ProtocolHeader.FLAG_HEARTBEAT);
+        //心跳帧可以没有消息体
+        if (length < 0 || (length == 0 && !heartbeat) || length > maxFrameLength) {
+            throw new TooLongFrameException("帧长度非法: " + length + "，最大允许: " + maxFrameLength);
+        }
+        int frameLength = ProtocolHeader.V2_HEADER_LENGTH + length;
+        if (in.readableBytes() < frameLength) {
+            return;  // 数据不完整，等待更多数据
+        }
+        rememberVersion(ctx, ProtocolHeader.VERSION_2);
+        if (heartbeat) {
+            log.debug("收到心跳帧: {}", ctx.channel().remoteAddress());
+            in.skipBytes(frameLength);
+            return;
+        }
+        if (ProtocolHeader.hasFlag(flags, ProtocolHeader.FLAG_COMPRESSED)) {
+            throw new CorruptedFrameException("暂不支持压缩的消息体");
+        }
+        int messageType = ProtocolHeader.messageType(in, readerIndex);
+        checkMessageType(messageType);
+        int serializerType = ProtocolHeader.serializerType(in, readerIndex);
+        long requestId = ProtocolHeader.requestId(in, readerIndex);
+        //在原缓冲区的切片上反序列化，不拷贝为byte[]；切片保留了引用，先消费整帧，消息体解析失败也不影响后续帧
+        ByteBuf body = in.slice(readerIndex + ProtocolHeader.V2_HEADER_LENGTH, length);
+        in.skipBytes(frameLength);
+        Object deserialize;
+        try {
+            deserialize = getSerializer(serializerType).deserialize(body, messageType);
+        } catch (RuntimeException e) {
+            bodyDecodeFailed(ctx, messageType, requestId, ProtocolHeader.status(in, readerIndex), e, out);
+            return;
+        }
+        //以帧头中的请求ID为准
+        if (deserialize instanceof RpcRequest) {
+            ((RpcRequest) deserialize).setRequestId(requestId);
+        } else if (deserialize instanceof RpcResponse) {
+            ((RpcResponse) deserialize).setRequestId(requestId);
+        }
+        out.add(deserialize);
+    }
+
+    private void decodeV1(ChannelHandlerContext ctx, ByteBuf in, int readerIndex, List<Object> out) {
+        if (in.readableBytes() < ProtocolHeader.V1_HEADER_LENGTH) {
             return;
         }
         //1.读取消息类型
-        short messageType = in.readShort();
-        // 现在还只支持request与response请求
+        short messageType = in.getShort(readerIndex);
+        checkMessageType(messageType);
+        //2.读取序列化的方式&类型
+        short serializerType = in.getShort(readerIndex + 2);
+        //3.读取序列化数据长度，超过上限直接拒绝，避免恶意或异常长度占满内存
+        int length = in.getInt(readerIndex + 4);
+        if (length <= 0 || length > maxFrameLength) {
+            throw new TooLongFrameException("帧长度非法: " + length + "，最大允许: " + maxFrameLength);
+        }
+        if (in.readableBytes() < ProtocolHeader.V1_HEADER_LENGTH + length) {
+            return;  // 数据不完整，等待更多数据
+        }
+        rememberVersion(ctx, ProtocolHeader.VERSION_1);
+        //4.在原缓冲区的切片上反序列化，不拷贝为byte[]；先消费整帧，消息体解析失败也不影响后续帧
+        ByteBuf body = in.slice(readerIndex + ProtocolHeader.V1_HEADER_LENGTH, length);
+        in.skipBytes(ProtocolHeader.V1_HEADER_LENGTH + length);
+        //v1响应没有请求ID，按发送顺序匹配最早发出的请求；解析失败的响应同样占用一个请求
+        Long requestId = messageType == MessageType.RESPONSE.getCode() ? MyEncoder.pendingRequests(ctx).poll() : null;
+        Object deserialize;
+        try {
+            deserialize = getSerializer(serializerType).deserialize(body, messageType);
+        } catch (RuntimeException e) {
+            //v1帧头没有状态码
+            bodyDecodeFailed(ctx, messageType, requestId != null ? requestId : 0L, 0, e, out);
+            return;
+        }
+        if (deserialize instanceof RpcResponse && requestId != null) {
+            ((RpcResponse) deserialize).setRequestId(requestId);
+        }
+        out.add(deserialize);
+    }
+
+    //帧边界完好、只是消息体无法解析：只让这一个请求失败，连接及其上的其他请求不受影响
+    private void bodyDecodeFailed(ChannelHandlerContext ctx, int messageType, long requestId, int status,
+                                  RuntimeException e, List<Object> out) {
+        if (messageType == MessageType.REQUEST.getCode()) {
+            //服务端：直接回写失败响应，调用方不必等到超时
+            log.error("请求解码失败，请求ID: {}, 来源: {}", requestId, ctx.channel().remoteAddress(), e);
+            RpcResponse response = RpcResponse.serviceError("请求解码失败");
+            response.setRequestId(requestId);
+            ctx.writeAndFlush(response);
+        } else {
+            //客户端：交给后续处理器，按请求ID完成对应的调用；服务端已返回失败时沿用帧头中的状态码，重试与熔断按原本的失败类型处理
+            log.error("响应解码失败，请求ID: {}, 状态码: {}, 来源: {}", requestId, status, ctx.channel().remoteAddress(), e);
+            RpcResponse response = RpcResponse.fail("响应解码失败，服务端状态码: " + status);
+            if (status != 0 && status != 200) {
+                response.setCode(status);
+            }
+            response.setRequestId(requestId);
+            out.add(response);
+        }
+    }
+
+    // 现在还只支持request与response请求
+    private void checkMessageType(int messageType) {
         if (messageType != MessageType.REQUEST.getCode() &&
                 messageType != MessageType.RESPONSE.getCode()) {
-            log.warn("暂不支持此种数据, messageType: {}", messageType);
-            return;
+            // 帧边界已经无法确定，只能断开连接
+            throw new CorruptedFrameException("暂不支持此种数据, messageType: " + messageType);
         }
-        //2.读取序列化的方式&类型
-        short serializerType = in.readShort();
+    }
+
+    private Serializer getSerializer(int serializerType) {
         Serializer serializer = Serializer.getSerializerByCode(serializerType);
         if (serializer == null) {
             log.error("不存在对应的序列化器, serializerType: {}", serializerType);
             throw new SerializeException("不存在对应的序列化器, serializerType: " + serializerType);
         }
-        //3.读取序列化数组长度
-        int length = in.readInt();
-        if (in.readableBytes() < length) {
-            return;  // 数据不完整，等待更多数据
-        }
-        //4.读取序列化数组
-        byte[] bytes = new byte[length];
-        in.readBytes(bytes);
-        log.debug("Received bytes: {}", Arrays.toString(bytes));
-        Object deserialize = serializer.deserialize(bytes, messageType);
+        return serializer;
+    }
 
-        out.add(deserialize);
+    //记录对端使用的协议版本，编码器据此回写相同版本的帧
+    private void rememberVersion(ChannelHandlerContext ctx, byte version) {
+        Attribute<Byte> attr = ctx.channel().attr(ProtocolHeader.PROTOCOL_VERSION);
+        Byte current = attr.get();
+        if (current == null || current != version) {
+            attr.set(version);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package common.serializer.mycoder;
 
 
+import common.message.Heartbeat;
 import common.message.MessageType;
 import common.message.RpcRequest;
 import common.message.RpcResponse;
@@ -8,43 +9,115 @@ import common.serializer.myserializer.Serializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.Attribute;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+
 /**
  * @ClassName MyEncoder
  * @Description 编码器
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:32
+ * @LastChangeDate 2024-12-18 10:30
  * @Version v5.0
  */
 @Slf4j
 @AllArgsConstructor
 public class MyEncoder extends MessageToByteEncoder {
     private Serializer serializer;
+    //连接上尚未确定对端版本时使用的协议版本
+    private byte protocolVersion;
+
+    public MyEncoder(Serializer serializer) {
+        this(serializer, ProtocolHeader.VERSION_2);
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
         log.debug("Encoding message of type: {}", msg.getClass());
-        //1.写入消息类型
+        if (msg instanceof Heartbeat) {
+            encodeHeartbeat(ctx, out);
+            return;
+        }
+        int messageType;
+        long requestId;
+        int status = 0;
         if (msg instanceof RpcRequest) {
-            out.writeShort(MessageType.REQUEST.getCode());
+            messageType = MessageType.REQUEST.getCode();
+            requestId = ((RpcRequest) msg).getRequestId();
         } else if (msg instanceof RpcResponse) {
-            out.writeShort(MessageType.RESPONSE.getCode());
+            messageType = MessageType.RESPONSE.getCode();
+            requestId = ((RpcResponse) msg).getRequestId();
+            status = ((RpcResponse) msg).getCode();
         } else {
             log.error("Unknown message type: {}", msg.getClass());
             throw new IllegalArgumentException("Unknown message type: " + msg.getClass());
         }
-        //2.写入序列化方式
-        out.writeShort(serializer.getType());
-        //得到序列化数组
-        byte[] serializeBytes = serializer.serialize(msg);
-        if (serializeBytes == null || serializeBytes.length == 0) {
+        //对端是v1时按v1格式回写
+        Byte peerVersion = ctx.channel().attr(ProtocolHeader.PROTOCOL_VERSION).get();
+        byte version = peerVersion != null ? peerVersion : protocolVersion;
+        int lengthIndex;
+        if (version == ProtocolHeader.VERSION_1) {
+            //1.写入消息类型
+            out.writeShort(messageType);
+            //2.写入序列化方式
+            out.writeShort(serializer.getType());
+            lengthIndex = out.writerIndex();
+        } else {
+            int headerStart = out.writerIndex();
+            out.writeShort(ProtocolHeader.MAGIC);
+            out.writeByte(ProtocolHeader.VERSION_2);
+            out.writeByte(0);  // flags
+            out.writeByte(messageType);
+            out.writeByte(serializer.getType());
+            out.writeShort(status);
+            out.writeLong(requestId);
+            lengthIndex = headerStart + ProtocolHeader.LENGTH_OFFSET;
+        }
+        //3.长度未知，先写占位
+        out.writeInt(0);
+        //4.直接序列化到out（池化的直接内存），不再经过中间byte[]
+        int bodyStart = out.writerIndex();
+        serializer.serialize(msg, out);
+        int length = out.writerIndex() - bodyStart;
+        if (length == 0) {
             throw new IllegalArgumentException("Serialized message is empty");
         }
-        //3.写入长度
-        out.writeInt(serializeBytes.length);
-        //4.写入序列化数组
-        out.writeBytes(serializeBytes);
+        //回填长度
+        out.setInt(lengthIndex, length);
+        //v1帧头没有请求ID，记下发送顺序，由解码器按顺序回填到响应
+        if (version == ProtocolHeader.VERSION_1 && msg instanceof RpcRequest) {
+            pendingRequests(ctx).add(requestId);
+        }
+    }
+
+    //心跳帧只有帧头；v1协议没有心跳，对端为v1时不发送
+    private void encodeHeartbeat(ChannelHandlerContext ctx, ByteBuf out) {
+        Byte peerVersion = ctx.channel().attr(ProtocolHeader.PROTOCOL_VERSION).get();
+        byte version = peerVersion != null ? peerVersion : protocolVersion;
+        if (version == ProtocolHeader.VERSION_1) {
+            return;
+        }
+        out.writeShort(ProtocolHeader.MAGIC);
+        out.writeByte(ProtocolHeader.VERSION_2);
+        out.writeByte(ProtocolHeader.FLAG_HEARTBEAT);
+        out.writeByte(MessageType.REQUEST.getCode());
+        out.writeByte(serializer.getType());
+        out.writeShort(0);  // status
+        out.writeLong(0L);
+        out.writeInt(0);
+    }
+
+    //v1连接上按发送顺序排列的请求ID，编码与解码都在连接的IO线程上执行
+    static Queue<Long> pendingRequests(ChannelHandlerContext ctx) {
+        Attribute<Queue<Long>> attr = ctx.channel().attr(ProtocolHeader.V1_PENDING_REQUESTS);
+        Queue<Long> queue = attr.get();
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            attr.set(queue);
+        }
+        return queue;
     }
 }
@@ -0,0 +1,87 @@
+package common.serializer.mycoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AttributeKey;
+
+import java.util.Queue;
+
+/**
+ * @ClassName ProtocolHeader
+ * @Description 协议帧头定义
+ * v1: messageType(2) | serializerType(2) | length(4) | body
+ * v2: magic(2) | version(1) | flags(1) | messageType(1) | serializerType(1) | status(2) | requestId(8) | length(4) | body
+ * status 为响应的状态码（请求帧为0），路由与错误处理不必反序列化消息体；消息体无法解析时也能据此完成对应的请求
+ * v1 的前两个字节是消息类型（0或1），v2 以魔数开头，据此区分新旧版本
+ * v1 帧头没有请求ID，客户端以v1访问旧服务端时，每条连接同时只有一个在途请求，响应按发送顺序与请求匹配
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 10:30
+ * @Version v5.0
+ */
+public final class ProtocolHeader {
+    //魔数 "KR"
+    public static final short MAGIC = 0x4B52;
+    public static final byte VERSION_1 = 1;
+    public static final byte VERSION_2 = 2;
+
+    //v1 帧头长度
+    public static final int V1_HEADER_LENGTH = 8;
+    //v2 帧头长度及各字段偏移
+    public static final int V2_HEADER_LENGTH = 20;
+    public static final int VERSION_OFFSET = 2;
+    public static final int FLAGS_OFFSET = 3;
+    public static final int MESSAGE_TYPE_OFFSET = 4;
+    public static final int SERIALIZER_TYPE_OFFSET = 5;
+    public static final int STATUS_OFFSET = 6;
+    public static final int REQUEST_ID_OFFSET = 8;
+    public static final int LENGTH_OFFSET = 16;
+
+    //标志位
+    public static final byte FLAG_HEARTBEAT = 0x01;
+    public static final byte FLAG_COMPRESSED = 0x02;
+
+    //连接上对端使用的协议版本，服务端按请求的版本回写响应
+    public static final AttributeKey<Byte> PROTOCOL_VERSION = AttributeKey.valueOf("krpc.protocolVersion");
+    //v1连接上已发出、尚未收到响应的请求ID，按发送顺序排列
+    public static final AttributeKey<Queue<Long>> V1_PENDING_REQUESTS = AttributeKey.valueOf("krpc.v1PendingRequests");
+
+    private ProtocolHeader() {
+    }
+
+    //判断从readerIndex开始的帧是否为v2
+    public static boolean isV2(ByteBuf in, int readerIndex) {
+        return in.getShort(readerIndex) == MAGIC;
+    }
+
+    public static byte version(ByteBuf in, int readerIndex) {
+        return in.getByte(readerIndex + VERSION_OFFSET);
+    }
+
+    public static byte flags(ByteBuf in, int readerIndex) {
+        return in.getByte(readerIndex + FLAGS_OFFSET);
+    }
+
+    public static byte messageType(ByteBuf in, int readerIndex) {
+        return in.getByte(readerIndex + MESSAGE_TYPE_OFFSET);
+    }
+
+    public static byte serializerType(ByteBuf in, int readerIndex) {
+        return in.getByte(readerIndex + SERIALIZER_TYPE_OFFSET);
+    }
+
+    //响应状态码，与RpcResponse.code一致；请求帧与心跳帧为0
+    public static int status(ByteBuf in, int readerIndex) {
+        return in.getUnsignedShort(readerIndex + STATUS_OFFSET);
+    }
+
+    public static long requestId(ByteBuf in, int readerIndex) {
+        return in.getLong(readerIndex + REQUEST_ID_OFFSET);
+    }
+
+    public static int length(ByteBuf in, int readerIndex) {
+        return in.getInt(readerIndex + LENGTH_OFFSET);
+    }
+
+    public static boolean hasFlag(byte flags, byte flag) {
+        return (flags & flag) != 0;
+    }
+}
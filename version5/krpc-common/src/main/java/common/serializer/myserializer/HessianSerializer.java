@@ -3,7 +3,9 @@ package common.serializer.myserializer;
 import com.caucho.hessian.io.HessianInput;
 import com.caucho.hessian.io.HessianOutput;
 import common.exception.SerializeException;
-
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -13,7 +15,7 @@ import java.io.IOException;
  * @ClassName HessianSerializer
  * @Description Hessian序列化
  * @Author Tong
- * @LastChangeDate 2024-11-29 11:49
+ * @LastChangeDate 2024-12-11 10:20
  * @Version v5.0
  */
 public class HessianSerializer implements Serializer {
@@ -29,6 +31,18 @@ public class HessianSerializer implements Serializer {
         }
     }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        // HessianOutput 直接写入 ByteBuf
+        try {
+            HessianOutput hessianOutput = new HessianOutput(new ByteBufOutputStream(out));
+            hessianOutput.writeObject(obj);
+            hessianOutput.flush();
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
+
     @Override
     public Object deserialize(byte[] bytes, int messageType) {
         // 使用 ByteArrayInputStream 和 HessianInput 来实现反序列化
@@ -40,6 +54,16 @@ public class HessianSerializer implements Serializer {
         }
     }
 
+    @Override
+    public Object deserialize(ByteBuf in, int messageType) {
+        try {
+            HessianInput hessianInput = new HessianInput(new ByteBufInputStream(in));
+            return hessianInput.readObject();
+        } catch (IOException e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
     @Override
     public int getType() {
         return 3;
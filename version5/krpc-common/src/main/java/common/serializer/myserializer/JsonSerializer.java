@@ -3,14 +3,19 @@ package common.serializer.myserializer;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import common.message.RpcRequest;
+import common.exception.SerializeException;
 import common.message.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
+import java.io.IOException;
 
 /**
  * @ClassName JsonSerializer
  * @Description json序列化
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:33
+ * @LastChangeDate 2024-12-17 14:00
  * @Version v5.0
  */
 public class JsonSerializer implements Serializer {
@@ -20,49 +25,77 @@ public class JsonSerializer implements Serializer {
         return bytes;
     }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        // fastjson 直接把json写入输出流
+        try {
+            JSON.writeJSONString(new ByteBufOutputStream(out), obj);
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
+
     @Override
     public Object deserialize(byte[] bytes, int messageType) {
-        Object obj = null;
         // 传输的消息分为request与response
         switch (messageType){
             case 0:
-                RpcRequest request = JSON.parseObject(bytes, RpcRequest.class);
-                Object[] objects = new Object[request.getParams().length];
-                // 把json字串转化成对应的对象， fastjson可以读出基本数据类型，不用转化
-                // 对转换后的request中的params属性逐个进行类型判断
-                for(int i = 0; i < objects.length; i++){
-                    Class<?> paramsType = request.getParamsType()[i];
-                    //判断每个对象类型是否和paramsTypes中的一致
-                    if (!paramsType.isAssignableFrom(request.getParams()[i].getClass())){
-                        //如果不一致，就行进行类型转换
-                        objects[i] = JSONObject.toJavaObject((JSONObject) request.getParams()[i],request.getParamsType()[i]);
-                    }else{
-                        //如果一致就直接赋给objects[i]
-                        objects[i] = request.getParams()[i];
-                    }
-                }
-                request.setParams(objects);
-                obj = request;
-                break;
+                return convertRequest(JSON.parseObject(bytes, RpcRequest.class));
             case 1:
-                RpcResponse response = JSON.parseObject(bytes, RpcResponse.class);
-                // 如果类型为空，说明返回错误
-                if(response.getDataType()==null){
-                    obj = RpcResponse.fail("类型为空");
-                    break;
-                }
-                Class<?> dataType = response.getDataType();
-                //判断转化后的response对象中的data的类型是否正确
-                if(response.getData() != null && !dataType.isAssignableFrom(response.getData().getClass())){
-                    response.setData(JSONObject.toJavaObject((JSONObject) response.getData(),dataType));
-                }
-                obj = response;
-                break;
+                return convertResponse(JSON.parseObject(bytes, RpcResponse.class));
             default:
                 System.out.println("暂时不支持此种消息");
                 throw new RuntimeException();
         }
-        return obj;
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in, int messageType) {
+        // fastjson 直接从输入流读取
+        try (ByteBufInputStream inputStream = new ByteBufInputStream(in)) {
+            switch (messageType){
+                case 0:
+                    return convertRequest(JSON.parseObject(inputStream, RpcRequest.class));
+                case 1:
+                    return convertResponse(JSON.parseObject(inputStream, RpcResponse.class));
+                default:
+                    throw new SerializeException("Unknown message type: " + messageType);
+            }
+        } catch (IOException e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    private RpcRequest convertRequest(RpcRequest request) {
+        Object[] objects = new Object[request.getParams().length];
+        // 把json字串转化成对应的对象， fastjson可以读出基本数据类型，不用转化
+        // 对转换后的request中的params属性逐个进行类型判断
+        for(int i = 0; i < objects.length; i++){
+            Class<?> paramsType = request.getParamsType()[i];
+            //判断每个对象类型是否和paramsTypes中的一致
+            if (!paramsType.isAssignableFrom(request.getParams()[i].getClass())){
+                //如果不一致，就行进行类型转换
+                objects[i] = JSONObject.toJavaObject((JSONObject) request.getParams()[i],request.getParamsType()[i]);
+            }else{
+                //如果一致就直接赋给objects[i]
+                objects[i] = request.getParams()[i];
+            }
+        }
+        request.setParams(objects);
+        return request;
+    }
+
+    private RpcResponse convertResponse(RpcResponse response) {
+        // 失败响应或服务方法返回 null 时没有数据类型，原样返回，保留状态码与错误信息
+        if(response.getDataType()==null){
+            return response;
+        }
+        Class<?> dataType = response.getDataType();
+        //判断转化后的response对象中的data的类型是否正确
+        if(response.getData() != null && !dataType.isAssignableFrom(response.getData().getClass())){
+            response.setData(JSONObject.toJavaObject((JSONObject) response.getData(),dataType));
+        }
+        return response;
     }
 
     //1 代表json序列化方式
@@ -4,26 +4,45 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
-import com.kama.pojo.User;
 import common.exception.SerializeException;
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.objenesis.strategy.StdInstantiatorStrategy;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
  * @ClassName KryoSerializer
  * @Description kryo序列化
+ * Kryo 实例不是线程安全的，每个线程（即每个 EventLoop）持有自己的 Kryo 及可复用的 Output/Input 缓冲区
+ * 写入时带上类信息（writeClassAndObject），因此可以直接序列化 RpcRequest/RpcResponse 整个消息
  * @Author Tong
- * @LastChangeDate 2024-11-29 11:29
+ * @LastChangeDate 2024-12-12 10:40
  * @Version v5.0
  */
 
 public class KryoSerializer implements Serializer {
-    private Kryo kryo;
-
-    public KryoSerializer() {
-        this.kryo = new Kryo();
+    // 复用缓冲区的初始大小，超出时自动扩容
+    private static final int BUFFER_SIZE = 4096;
+    // 额外注册的类，注册后只写类ID而不写类名；两端注册的类及顺序必须一致
+    private static final List<Class<?>> registeredClasses = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<KryoHolder> holder = ThreadLocal.withInitial(KryoHolder::new);
+
+    /**
+     * 注册需要传输的业务类（如参数、返回值类型），需在第一次序列化之前调用
+     */
+    public static void register(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            if (!registeredClasses.contains(clazz)) {
+                registeredClasses.add(clazz);
+            }
+        }
     }
 
     @Override
@@ -31,15 +50,34 @@ public class KryoSerializer implements Serializer {
         if (obj == null) {
             throw new IllegalArgumentException("Cannot serialize null object");
         }
-
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             Output output = new Output(byteArrayOutputStream)) {
-
-            kryo.writeObject(output, obj); // 使用 Kryo 写入对象
+        KryoHolder kryoHolder = holder.get();
+        Output output = kryoHolder.output;
+        try {
+            output.setOutputStream(null);
+            output.clear();
+            kryoHolder.kryo.writeClassAndObject(output, obj); // 使用 Kryo 写入对象
             return output.toBytes(); // 返回字节数组
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        if (obj == null) {
+            throw new IllegalArgumentException("Cannot serialize null object");
+        }
+        KryoHolder kryoHolder = holder.get();
+        Output output = kryoHolder.output;
+        // 复用的缓冲区写满或 flush 时写入 ByteBuf
+        try {
+            output.setOutputStream(new ByteBufOutputStream(out));
+            kryoHolder.kryo.writeClassAndObject(output, obj);
+            output.flush();
         } catch (Exception e) {
-            throw new SerializeException("Serialization failed");
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            output.setOutputStream(null);
         }
     }
 
@@ -48,16 +86,35 @@ public class KryoSerializer implements Serializer {
         if (bytes == null || bytes.length == 0) {
             throw new IllegalArgumentException("Cannot deserialize null or empty byte array");
         }
+        KryoHolder kryoHolder = holder.get();
+        Input input = kryoHolder.input;
+        try {
+            checkMessageType(messageType);
+            input.setBuffer(bytes);
+            return kryoHolder.kryo.readClassAndObject(input); // 使用 Kryo 反序列化对象
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            input.setInputStream(null);
+        }
+    }
 
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-             Input input = new Input(byteArrayInputStream)) {
-
-            // 根据 messageType 来反序列化不同的类
-            Class<?> clazz = getClassForMessageType(messageType);
-            return kryo.readObject(input, clazz); // 使用 Kryo 反序列化对象
-
+    @Override
+    public Object deserialize(ByteBuf in, int messageType) {
+        if (!in.isReadable()) {
+            throw new IllegalArgumentException("Cannot deserialize empty buffer");
+        }
+        KryoHolder kryoHolder = holder.get();
+        Input input = kryoHolder.input;
+        try {
+            checkMessageType(messageType);
+            input.setBuffer(kryoHolder.inputBuffer);
+            input.setInputStream(new ByteBufInputStream(in));
+            return kryoHolder.kryo.readClassAndObject(input);
         } catch (Exception e) {
-            throw new SerializeException("Deserialization failed");
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            input.setInputStream(null);
         }
     }
 
@@ -66,10 +123,9 @@ public class KryoSerializer implements Serializer {
         return 2;
     }
 
-    private Class<?> getClassForMessageType(int messageType) {
-        if (messageType == 1) {
-            return User.class;  // 假设我们在此反序列化成 User 类
-        } else {
+    // 只支持request与response两种消息
+    private void checkMessageType(int messageType) {
+        if (messageType != 0 && messageType != 1) {
             throw new SerializeException("Unknown message type: " + messageType);
         }
     }
@@ -78,4 +134,27 @@ public class KryoSerializer implements Serializer {
     public String toString() {
         return "Kryo";
     }
-}
\ No newline at end of file
+
+    // 每个线程独享的 Kryo 及缓冲区
+    private static class KryoHolder {
+        private final Kryo kryo;
+        private final Output output = new Output(BUFFER_SIZE, -1);
+        private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+        private final Input input = new Input(inputBuffer);
+
+        private KryoHolder() {
+            kryo = new Kryo();
+            // 优先使用无参构造器，没有时直接创建实例（不调用构造器）
+            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            // 消息信封及其字段类型固定注册，省去每条消息写类名
+            kryo.register(RpcRequest.class);
+            kryo.register(RpcResponse.class);
+            kryo.register(Object[].class);
+            kryo.register(Class[].class);
+            kryo.register(Class.class);
+            for (Class<?> clazz : registeredClasses) {
+                kryo.register(clazz);
+            }
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package common.serializer.myserializer;
 
+import common.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
 import java.io.*;
 
 /**
  * @ClassName ObjectSerializer
  * @Description JDK序列化方式
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:34
+ * @LastChangeDate 2024-12-11 10:20
  * @Version v5.0
  */
 public class ObjectSerializer implements Serializer {
@@ -31,6 +36,18 @@ public class ObjectSerializer implements Serializer {
         return bytes;
     }
 
+    //对象 -》ByteBuf，不经过中间字节数组
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(out));
+            oos.writeObject(obj);
+            oos.flush();
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
+
     //字节数组 -》对象
     @Override
     public Object deserialize(byte[] bytes, int messageType) {
@@ -47,6 +64,17 @@ public class ObjectSerializer implements Serializer {
         return obj;
     }
 
+    //ByteBuf -》对象
+    @Override
+    public Object deserialize(ByteBuf in, int messageType) {
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteBufInputStream(in));
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
     //0 代表Java 原生序列器
     @Override
     public int getType() {
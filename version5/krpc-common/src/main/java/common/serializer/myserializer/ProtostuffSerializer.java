@@ -1,20 +1,40 @@
 package common.serializer.myserializer;
 
 
-import com.kama.pojo.User;
 import common.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
+
+import java.io.IOException;
+
 /**
  * @ClassName ProtostuffSerializer
  * @Description protostuff序列化
+ * 消息统一包装进 Envelope 后再序列化：Envelope 只有一个 Object 字段，protostuff 会为其写入实际类型，
+ * 因此 RpcRequest/RpcResponse 中多态的参数、返回值都能还原
  * @Author Tong
- * @LastChangeDate 2024-11-29 11:55
+ * @LastChangeDate 2024-12-12 15:20
  * @Version v5.0
  */
 public class ProtostuffSerializer implements Serializer {
+    // schema 缓存，按类直接挂在 Class 上，查找无需哈希
+    private static final ClassValue<Schema<?>> schemaCache = new ClassValue<>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return RuntimeSchema.getSchema(type);
+        }
+    };
+    // 每个线程复用一个 LinkedBuffer，用完清空
+    private static final ThreadLocal<LinkedBuffer> bufferHolder =
+            ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+
+    @SuppressWarnings("unchecked")
+    private static final Schema<Envelope> envelopeSchema = (Schema<Envelope>) getSchema(Envelope.class);
 
     @Override
     public byte[] serialize(Object obj) {
@@ -22,19 +42,28 @@ public class ProtostuffSerializer implements Serializer {
         if (obj == null) {
             throw new IllegalArgumentException("Cannot serialize null object");
         }
-        // 获取对象的 schema
-        Schema schema = RuntimeSchema.getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferHolder.get();
+        try {
+            return ProtostuffIOUtil.toByteArray(new Envelope(obj), envelopeSchema, buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
 
-        // 使用 LinkedBuffer 来创建缓冲区（默认大小 1024）
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
-        // 序列化对象为字节数组
-        byte[] bytes;
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        if (obj == null) {
+            throw new IllegalArgumentException("Cannot serialize null object");
+        }
+        LinkedBuffer buffer = bufferHolder.get();
+        // LinkedBuffer 写满后直接刷入 ByteBuf
         try {
-            bytes = ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), new Envelope(obj), envelopeSchema, buffer);
+        } catch (IOException e) {
+            throw new SerializeException("Serialization failed", e);
         } finally {
             buffer.clear();
         }
-        return bytes;
     }
 
     @Override
@@ -42,24 +71,32 @@ public class ProtostuffSerializer implements Serializer {
         if (bytes == null || bytes.length == 0) {
             throw new IllegalArgumentException("Cannot deserialize null or empty byte array");
         }
-
-        // 根据 messageType 来决定反序列化的类，这里假设 `messageType` 是类的标识符
-        Class<?> clazz = getClassForMessageType(messageType);
-
-        // 获取对象的 schema
-        Schema schema = RuntimeSchema.getSchema(clazz);
-
-        // 创建一个空的对象实例
-        Object obj;
+        checkMessageType(messageType);
+        Envelope envelope = envelopeSchema.newMessage();
         try {
-            obj = clazz.getDeclaredConstructor().newInstance();
-        } catch (Exception e) {
-            throw new SerializeException("Deserialization failed due to reflection issues");
+            ProtostuffIOUtil.mergeFrom(bytes, envelope, envelopeSchema);
+        } catch (RuntimeException e) {
+            throw new SerializeException("Deserialization failed", e);
         }
+        return envelope.value;
+    }
 
-        // 反序列化字节数组为对象
-        ProtostuffIOUtil.mergeFrom(bytes, obj, schema);
-        return obj;
+    @Override
+    public Object deserialize(ByteBuf in, int messageType) {
+        if (!in.isReadable()) {
+            throw new IllegalArgumentException("Cannot deserialize empty buffer");
+        }
+        checkMessageType(messageType);
+        Envelope envelope = envelopeSchema.newMessage();
+        LinkedBuffer buffer = bufferHolder.get();
+        try {
+            ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in), envelope, envelopeSchema, buffer);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+        return envelope.value;
     }
 
     @Override
@@ -67,11 +104,14 @@ public class ProtostuffSerializer implements Serializer {
         return 4;
     }
 
-    // 用于根据 messageType 获取对应的类
-    private Class<?> getClassForMessageType(int messageType) {
-        if (messageType == 1) {
-            return User.class;  // 假设我们在此反序列化成 User 类
-        } else {
+    // 获取类对应的 schema
+    public static Schema<?> getSchema(Class<?> clazz) {
+        return schemaCache.get(clazz);
+    }
+
+    // 只支持request与response两种消息
+    private void checkMessageType(int messageType) {
+        if (messageType != 0 && messageType != 1) {
             throw new SerializeException("Unknown message type: " + messageType);
         }
     }
@@ -80,4 +120,16 @@ public class ProtostuffSerializer implements Serializer {
     public String toString() {
         return "Protostuff";
     }
+
+    // 消息信封，value 的实际类型随数据一起写出
+    static final class Envelope {
+        private Object value;
+
+        Envelope() {
+        }
+
+        Envelope(Object value) {
+            this.value = value;
+        }
+    }
 }
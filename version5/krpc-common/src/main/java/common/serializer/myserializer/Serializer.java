@@ -1,7 +1,6 @@
 package common.serializer.myserializer;
 
-
-
+import io.netty.buffer.ByteBuf;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -10,14 +9,28 @@ import java.util.Map;
  * @InterfaceName Serializer
  * @Description 序列化接口
  * @Author Tong
- * @LastChangeDate 2024-11-29 10:33
+ * @LastChangeDate 2024-12-12 10:40
  * @Version v5.0
  */
 public interface Serializer {
     byte[] serialize(Object obj);
 
+    // 直接序列化到Netty的ByteBuf中（编码器传入的是池化的直接内存），省去中间byte[]及其拷贝
+    // 默认实现退化为先得到byte[]再写入，各序列化器应覆盖此方法
+    default void serialize(Object obj, ByteBuf out) {
+        out.writeBytes(serialize(obj));
+    }
+
     Object deserialize(byte[] bytes, int messageType);
 
+    // 直接从ByteBuf（解码器传入的帧切片）反序列化，读取in中全部可读字节
+    // 默认实现退化为先拷贝成byte[]，各序列化器应覆盖此方法
+    default Object deserialize(ByteBuf in, int messageType) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(bytes, messageType);
+    }
+
     int getType();
 
     // 定义静态常量 serializerMap
@@ -35,4 +48,15 @@ public interface Serializer {
         }
         return serializerMap.get(code); // 如果不存在，则返回 null
     }
+
+    // 根据名称（如配置中的 Hessian、Kryo）获取序列化器，不区分大小写
+    static Serializer getSerializerByName(String name) {
+        getSerializerByCode(0);
+        for (Serializer serializer : serializerMap.values()) {
+            if (serializer.toString().equalsIgnoreCase(name)) {
+                return serializer;
+            }
+        }
+        return null;
+    }
 }
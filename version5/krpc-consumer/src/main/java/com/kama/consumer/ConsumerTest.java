@@ -6,8 +6,12 @@ import com.kama.pojo.User;
 import com.kama.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @ClassName ConsumerExample
@@ -61,6 +65,22 @@ public class ConsumerTest {
 
         // Gracefully shutdown the executor service
         executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+
+        // 异步调用：不需要线程池，所有请求同时在途，由响应回调处理结果
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            final Integer i1 = i;
+            futures.add(proxy.getUserByUserIdAsync(i1).whenComplete((user, e) -> {
+                if (e != null) {
+                    log.error("异步调用服务时发生异常，userId={}", i1, e);
+                } else {
+                    log.info("异步从服务端得到的user={}", user);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+
         clientProxy.close();
     }
 
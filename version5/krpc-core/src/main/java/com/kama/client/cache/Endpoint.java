@@ -0,0 +1,88 @@
+package com.kama.client.cache;
+
+import java.net.InetSocketAddress;
+
+/**
+ * @ClassName Endpoint
+ * @Description 服务提供者地址，在监听到注册节点时解析一次（含域名解析），之后随快照复用
+ * 调用路径上直接使用解析好的 InetSocketAddress，不再做正向或反向域名解析
+ * 同一地址在各版本快照中是同一个实例，调用统计随实例保留
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 14:00
+ * @Version v5.0
+ */
+public final class Endpoint {
+    //注册中心中的地址，格式 host:port
+    private final String address;
+    private final String host;
+    private final int port;
+    private final InetSocketAddress socketAddress;
+    //调用统计，不参与 equals
+    private final EndpointStats stats = new EndpointStats();
+
+    private Endpoint(String address, String host, int port, InetSocketAddress socketAddress) {
+        this.address = address;
+        this.host = host;
+        this.port = port;
+        this.socketAddress = socketAddress;
+    }
+
+    /**
+     * 解析 host:port 格式的地址并完成域名解析；解析失败时保留未解析的地址，由建立连接时再解析
+     */
+    public static Endpoint parse(String address) {
+        int index = address.lastIndexOf(':');
+        if (index <= 0 || index == address.length() - 1) {
+            throw new IllegalArgumentException("服务地址格式错误: " + address);
+        }
+        String host = address.substring(0, index);
+        int port = Integer.parseInt(address.substring(index + 1));
+        return new Endpoint(address, host, port, new InetSocketAddress(host, port));
+    }
+
+    /**
+     * 由已有的 InetSocketAddress 创建，使用 getHostString 避免反向解析
+     */
+    public static Endpoint of(InetSocketAddress socketAddress) {
+        String host = socketAddress.getHostString();
+        return new Endpoint(host + ":" + socketAddress.getPort(), host, socketAddress.getPort(), socketAddress);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public InetSocketAddress getSocketAddress() {
+        return socketAddress;
+    }
+
+    public EndpointStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Endpoint && address.equals(((Endpoint) o).address);
+    }
+
+    @Override
+    public int hashCode() {
+        return address.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
@@ -0,0 +1,158 @@
+package com.kama.client.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName EndpointStats
+ * @Description 客户端对单个服务提供者的调用统计，由调用路径维护，供负载均衡读取
+ * 计数器使用 LongAdder：竞争时分散到带填充的 Cell 上累加，多个调用线程同时增减时不会互相伪共享
+ * 延迟使用 peak-EWMA：样本高于当前值时直接取样本（迅速反映变慢），否则按距上次更新的时间指数衰减地融合；
+ * 长时间没有样本时读取到的延迟也按时间衰减，避免一次慢请求让地址长期分不到请求
+ * 另外记录调用结果（连续失败次数、检测周期内的成功与失败次数）与摘除状态，供异常实例检测使用
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 20:00
+ * @Version v5.0
+ */
+public final class EndpointStats {
+    //EWMA 的衰减时间常数，约为 10 秒内的样本主导当前值
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    //尚无延迟样本但已有在途请求时的代价，使新地址的请求数不会无限制地增长
+    private static final double PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    //在途请求数
+    private final LongAdder active = new LongAdder();
+    //延迟的 EWMA（纳秒），以 double 的位模式存放，CAS 更新
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    //上次更新 EWMA 的时间
+    private final AtomicLong stamp = new AtomicLong(System.nanoTime());
+
+    //连续失败次数，成功时清零
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    //当前检测周期内的成功、失败次数
+    private final LongAdder intervalSuccesses = new LongAdder();
+    private final LongAdder intervalFailures = new LongAdder();
+    //摘除到的时间（毫秒时间戳），0为未摘除
+    private final AtomicLong ejectedUntil = new AtomicLong(0);
+    //累计摘除次数，决定下次摘除的时长，健康一段时间后递减
+    private final AtomicInteger ejectionCount = new AtomicInteger(0);
+
+    //请求发出前调用
+    public void beginRequest() {
+        active.increment();
+    }
+
+    //请求完成（成功、失败或超时）后调用，与 beginRequest 一一对应
+    public void endRequest() {
+        active.decrement();
+    }
+
+    //请求完成后调用，同时记录本次往返延迟；失败的调用由调用方传入不短于超时时间的惩罚延迟
+    public void endRequest(long rttNanos) {
+        active.decrement();
+        observe(rttNanos);
+    }
+
+    //当前在途请求数
+    public long getActive() {
+        return active.sum();
+    }
+
+    //记录一个延迟样本
+    public void observe(long rttNanos) {
+        long now = System.nanoTime();
+        //每段流逝的时间只由一个样本消费，并发记录时不会重复衰减
+        long elapsed = Math.max(now - stamp.getAndSet(now), 0);
+        double weight = Math.exp(-elapsed / DECAY_NANOS);
+        long bits;
+        double next;
+        do {
+            bits = ewmaBits.get();
+            double current = Double.longBitsToDouble(bits);
+            next = rttNanos > current ? rttNanos : current * weight + rttNanos * (1 - weight);
+        } while (!ewmaBits.compareAndSet(bits, Double.doubleToRawLongBits(next)));
+    }
+
+    //按当前时间衰减后的延迟 EWMA（纳秒），只读，不修改统计
+    public double getEwmaNanos(long now) {
+        double current = Double.longBitsToDouble(ewmaBits.get());
+        long elapsed = Math.max(now - stamp.get(), 0);
+        return current * Math.exp(-elapsed / DECAY_NANOS);
+    }
+
+    //负载代价：延迟 EWMA 乘以（在途请求数 + 1），越小越优先
+    public double getCost(long now) {
+        long pending = getActive();
+        double ewma = getEwmaNanos(now);
+        if (ewma == 0.0) {
+            return pending == 0 ? 0.0 : PENALTY_NANOS + pending;
+        }
+        return ewma * (pending + 1);
+    }
+
+    //记录一次成功的调用
+    public void recordSuccess() {
+        intervalSuccesses.increment();
+        //先读后写，成功为常态时不反复写同一缓存行
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    //记录一次失败的调用，返回当前的连续失败次数
+    public int recordFailure() {
+        intervalFailures.increment();
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    //取出并清零本检测周期的成功次数
+    public long drainIntervalSuccesses() {
+        return intervalSuccesses.sumThenReset();
+    }
+
+    //取出并清零本检测周期的失败次数
+    public long drainIntervalFailures() {
+        return intervalFailures.sumThenReset();
+    }
+
+    //当前是否处于摘除期
+    public boolean isEjected(long nowMillis) {
+        long until = ejectedUntil.get();
+        return until != 0 && nowMillis < until;
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil.get();
+    }
+
+    public int getEjectionCount() {
+        return ejectionCount.get();
+    }
+
+    /**
+     * 摘除到指定时间，已处于摘除状态（含已到期尚未恢复）时返回 false
+     */
+    public boolean tryEject(long untilMillis) {
+        if (ejectedUntil.compareAndSet(0, untilMillis)) {
+            ejectionCount.incrementAndGet();
+            consecutiveFailures.set(0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 摘除到期后恢复，只有一个线程会成功
+     */
+    public boolean tryRestore(long nowMillis) {
+        long until = ejectedUntil.get();
+        return until != 0 && nowMillis >= until && ejectedUntil.compareAndSet(until, 0);
+    }
+
+    //健康的检测周期后递减摘除次数，使下次摘除的时长回落
+    public void decayEjectionCount() {
+        ejectionCount.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    }
+}
@@ -1,73 +1,226 @@
 package com.kama.client.cache;
 
+import common.message.ProviderMetadata;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
-
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * @ClassName serviceCache
  * @Description 建立本地缓存
+ * 每个服务的地址列表保存为不可变快照，修改时在 compute 中基于旧快照生成新快照并原子替换，
+ * 监听线程的修改与调用线程的读取互不干扰，读取只需一次 map 查找
+ * 地址在加入缓存时解析为 Endpoint（在监听线程中完成域名解析），调用路径上不再解析
+ * 快照变化后通知监听器（如负载均衡、熔断器），由其在监听线程中重建或清理依赖地址列表的结构
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:34
+ * @LastChangeDate 2024-12-18 14:00
  * @Version v5.0
  */
 @Slf4j
 public class ServiceCache {
     //key: serviceName 服务名
-    //value： addressList 服务提供者列表
-    private static Map<String, List<String>> cache = new ConcurrentHashMap<>();
+    //value： 服务提供者地址列表的快照
+    private static Map<String, ServiceSnapshot> cache = new ConcurrentHashMap<>();
+    //快照版本号生成器
+    private static final AtomicLong versionGenerator = new AtomicLong(0);
+    //快照变化监听器
+    private final List<Consumer<ServiceSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    //设置快照变化监听器，替换已添加的监听器；服务的地址全部下线时收到该服务的空快照
+    public void setListener(Consumer<ServiceSnapshot> listener) {
+        listeners.clear();
+        listeners.add(listener);
+    }
+
+    //添加快照变化监听器，多个监听器按添加顺序通知
+    public void addListener(Consumer<ServiceSnapshot> listener) {
+        listeners.add(listener);
+    }
 
-    //添加服务
+    //添加服务，使用默认元数据
     public void addServiceToCache(String serviceName, String address) {
-        if (cache.containsKey(serviceName)) {
-            List<String> addressList = cache.get(serviceName);
-            addressList.add(address);
-            log.info("有服务名情况，将name为{}和地址为{}的服务添加到本地缓存中", serviceName, address);
-        } else {
-            List<String> addressList = new ArrayList<>();
-            addressList.add(address);
-            cache.put(serviceName, addressList);
-            log.info("无服务名情况，将name为{}和地址为{}的服务添加到本地缓存中", serviceName, address);
+        addServiceToCache(serviceName, address, ProviderMetadata.DEFAULT);
+    }
+
+    //添加服务；地址已存在时更新其元数据（如提供者修改了权重）
+    public void addServiceToCache(String serviceName, String address, ProviderMetadata metadata) {
+        //已有的地址复用原实例；新地址在 compute 之外解析，避免持有 map 的桶锁时做域名解析
+        Endpoint existing = getSnapshot(serviceName).findEndpoint(address);
+        Endpoint endpoint = existing != null ? existing : parse(address);
+        if (endpoint == null) {
+            return;
+        }
+        ServiceSnapshot[] before = new ServiceSnapshot[1];
+        ServiceSnapshot result = cache.compute(serviceName, (key, snapshot) -> {
+            ServiceSnapshot current = snapshot != null ? snapshot : ServiceSnapshot.empty(key);
+            before[0] = current;
+            return current.with(versionGenerator.incrementAndGet(), endpoint, metadata);
+        });
+        if (result != before[0]) {
+            notifyChanged(serviceName);
+            log.info("将name为{}和地址为{}的服务添加到本地缓存中，元数据{}", serviceName, address, metadata);
         }
     }
 
     //修改服务地址
     public void replaceServiceAddress(String serviceName, String oldAddress, String newAddress) {
-        if (cache.containsKey(serviceName)) {
-            List<String> addressList = cache.get(serviceName);
-            addressList.remove(oldAddress);
-            addressList.add(newAddress);
+        Endpoint endpoint = parse(newAddress);
+        if (endpoint == null) {
+            return;
+        }
+        ServiceSnapshot result = cache.computeIfPresent(serviceName, (key, snapshot) -> {
+            //新地址沿用旧地址的元数据
+            int index = snapshot.indexOf(oldAddress);
+            ProviderMetadata metadata = index >= 0 ? snapshot.getMetadata(index) : ProviderMetadata.DEFAULT;
+            return snapshot.without(versionGenerator.incrementAndGet(), oldAddress)
+                    .with(versionGenerator.incrementAndGet(), endpoint, metadata);
+        });
+        if (result != null) {
+            notifyChanged(serviceName);
             log.info("将服务{}的地址{}替换为{}", serviceName, oldAddress, newAddress);
         } else {
             log.error("旧地址{}不在服务{}的地址列表中", oldAddress, serviceName);
         }
     }
 
-    //从缓存中取服务地址列表
+    //用完整的地址列表（如从注册中心直接拉取的）替换服务的快照，元数据未知
+    public void putServiceList(String serviceName, List<String> addressList) {
+        Map<String, ProviderMetadata> providers = new LinkedHashMap<>();
+        for (String address : addressList) {
+            providers.put(address, null);
+        }
+        putServiceList(serviceName, providers);
+    }
+
+    /**
+     * 用完整的提供者列表替换服务的快照，key 为地址，value 为从注册中心读到的元数据，null 为未知
+     * 在 compute 中与最新的快照合并：已有的地址复用原实例，元数据未知时保留已有的（如监听线程刚写入的），
+     * 不会被默认元数据覆盖
+     */
+    public void putServiceList(String serviceName, Map<String, ProviderMetadata> providers) {
+        //新地址在 compute 之外解析，避免持有 map 的桶锁时做域名解析
+        ServiceSnapshot before = getSnapshot(serviceName);
+        Map<String, Endpoint> parsed = new HashMap<>();
+        for (String address : providers.keySet()) {
+            Endpoint existing = before.findEndpoint(address);
+            Endpoint endpoint = existing != null ? existing : parse(address);
+            if (endpoint != null) {
+                parsed.put(address, endpoint);
+            }
+        }
+        cache.compute(serviceName, (key, snapshot) -> {
+            ServiceSnapshot current = snapshot != null ? snapshot : ServiceSnapshot.empty(key);
+            List<Endpoint> endpoints = new ArrayList<>();
+            List<ProviderMetadata> metadata = new ArrayList<>();
+            for (Map.Entry<String, ProviderMetadata> provider : providers.entrySet()) {
+                String address = provider.getKey();
+                int index = current.indexOf(address);
+                //已有的地址复用原实例，保留其调用统计
+                Endpoint endpoint = index >= 0 ? current.getEndpoint(index) : parsed.get(address);
+                if (endpoint == null) {
+                    continue;  // 格式错误的地址
+                }
+                ProviderMetadata meta = provider.getValue();
+                if (meta == null) {
+                    meta = index >= 0 ? current.getMetadata(index) : ProviderMetadata.DEFAULT;
+                }
+                endpoints.add(endpoint);
+                metadata.add(meta);
+            }
+            // 返回 null 时移除该服务的缓存条目
+            return endpoints.isEmpty() ? null : new ServiceSnapshot(key, versionGenerator.incrementAndGet(),
+                    endpoints.toArray(new Endpoint[0]), metadata.toArray(new ProviderMetadata[0]));
+        });
+        notifyChanged(serviceName);
+        log.info("服务{}的提供者列表已更新为{}", serviceName, providers);
+    }
+
+    //取服务地址快照，没有时返回空快照
+    public ServiceSnapshot getSnapshot(String serviceName) {
+        ServiceSnapshot snapshot = cache.get(serviceName);
+        return snapshot != null ? snapshot : ServiceSnapshot.EMPTY;
+    }
+
+    //所有服务当前的快照
+    public Collection<ServiceSnapshot> getSnapshots() {
+        return cache.values();
+    }
+
+    /**
+     * 基于快照生成排除部分地址后的新快照（如摘除异常实例后交给负载均衡的视图），使用新的版本号，不写入缓存
+     */
+    public ServiceSnapshot exclude(ServiceSnapshot snapshot, Predicate<Endpoint> excluded) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        List<ProviderMetadata> metadata = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!excluded.test(snapshot.getEndpoint(i))) {
+                endpoints.add(snapshot.getEndpoint(i));
+                metadata.add(snapshot.getMetadata(i));
+            }
+        }
+        return new ServiceSnapshot(snapshot.getServiceName(), versionGenerator.incrementAndGet(),
+                endpoints.toArray(new Endpoint[0]), metadata.toArray(new ProviderMetadata[0]));
+    }
+
+    //从缓存中取服务地址列表，返回不可修改的列表，避免调用的时候出现空指针异常
     public List<String> getServiceListFromCache(String serviceName) {
-        if (!cache.containsKey(serviceName)) {
+        ServiceSnapshot snapshot = cache.get(serviceName);
+        if (snapshot == null) {
             log.warn("服务{}未找到", serviceName);
-            //返回个不可修改的空列表，避免调用的时候出现空指针异常
-            return Collections.emptyList();
+            return ServiceSnapshot.EMPTY.getAddressList();
+        }
+        return snapshot.getAddressList();
+    }
+
+    //通知监听器，传入的是修改后的最新快照；并发修改时通知可能乱序到达，监听器按版本号丢弃旧快照
+    private void notifyChanged(String serviceName) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        ServiceSnapshot current = cache.get(serviceName);
+        ServiceSnapshot snapshot = current != null ? current : ServiceSnapshot.empty(serviceName);
+        //一个监听器失败不影响其余监听器
+        for (Consumer<ServiceSnapshot> listener : listeners) {
+            try {
+                listener.accept(snapshot);
+            } catch (RuntimeException e) {
+                log.error("服务{}的快照变化通知失败", serviceName, e);
+            }
+        }
+    }
+
+    //解析地址，格式错误时记录日志并忽略该地址
+    private Endpoint parse(String address) {
+        try {
+            return Endpoint.parse(address);
+        } catch (IllegalArgumentException e) {
+            log.error("忽略格式错误的服务地址: {}", address, e);
+            return null;
         }
-        return cache.get(serviceName);
     }
 
     //从缓存中删除服务地址
     public void delete(String serviceName, String address) {
-        List<String> addressList = cache.get(serviceName);
-        if (addressList != null && addressList.contains(address)) {
-            addressList.remove(address);
+        boolean[] removed = new boolean[1];
+        cache.computeIfPresent(serviceName, (key, snapshot) -> {
+            ServiceSnapshot next = snapshot.without(versionGenerator.incrementAndGet(), address);
+            removed[0] = next != snapshot;
+            // 返回 null 时移除该服务的缓存条目
+            return next.isEmpty() ? null : next;
+        });
+        if (removed[0]) {
+            notifyChanged(serviceName);
             log.info("将name为{}和地址为{}的服务从本地缓存中删除", serviceName, address);
-            if (addressList.isEmpty()) {
-                cache.remove(serviceName);  // 移除该服务的缓存条目
-                log.info("服务{}的地址列表为空，已从缓存中清除", serviceName);
-            }
         } else {
             log.warn("删除失败，地址{}不在服务{}的地址列表中", address, serviceName);
         }
@@ -0,0 +1,140 @@
+package com.kama.client.cache;
+
+import common.message.ProviderMetadata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @ClassName ServiceSnapshot
+ * @Description 某个服务在某一时刻的地址列表快照，创建后不可修改
+ * 列表变化时整体替换为新快照并递增版本号，读取方无需加锁；
+ * 负载均衡可以按服务名和版本号缓存由地址列表计算出的结构（如哈希环），版本不变时直接复用
+ * 每个地址附带提供者发布的元数据（如权重），元数据变化同样生成新版本的快照
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 22:00
+ * @Version v5.0
+ */
+public final class ServiceSnapshot {
+    public static final ServiceSnapshot EMPTY = new ServiceSnapshot("", 0L, new Endpoint[0], new ProviderMetadata[0]);
+
+    //服务名
+    private final String serviceName;
+    //版本号，全局递增，不同服务的快照版本号也不相同
+    private final long version;
+    //已解析的地址
+    private final Endpoint[] endpoints;
+    //提供者元数据，与 endpoints 一一对应
+    private final ProviderMetadata[] metadata;
+    //地址字符串的只读列表，与 endpoints 一一对应
+    private final List<String> addressList;
+
+    ServiceSnapshot(String serviceName, long version, Endpoint[] endpoints, ProviderMetadata[] metadata) {
+        this.serviceName = serviceName;
+        this.version = version;
+        this.endpoints = endpoints;
+        this.metadata = metadata;
+        String[] addresses = new String[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            addresses[i] = endpoints[i].getAddress();
+        }
+        this.addressList = Collections.unmodifiableList(Arrays.asList(addresses));
+    }
+
+    //某个服务的空快照
+    static ServiceSnapshot empty(String serviceName) {
+        return new ServiceSnapshot(serviceName, 0L, new Endpoint[0], new ProviderMetadata[0]);
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return endpoints.length;
+    }
+
+    public boolean isEmpty() {
+        return endpoints.length == 0;
+    }
+
+    public Endpoint getEndpoint(int index) {
+        return endpoints[index];
+    }
+
+    public ProviderMetadata getMetadata(int index) {
+        return metadata[index];
+    }
+
+    public int getWeight(int index) {
+        return metadata[index].getWeight();
+    }
+
+    //按地址字符串查找，不存在时返回 null
+    public Endpoint findEndpoint(String address) {
+        int index = indexOf(address);
+        return index >= 0 ? endpoints[index] : null;
+    }
+
+    //按地址字符串查找下标，不存在时返回 -1
+    public int indexOf(String address) {
+        for (int i = 0; i < endpoints.length; i++) {
+            if (endpoints[i].getAddress().equals(address)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(String address) {
+        return indexOf(address) >= 0;
+    }
+
+    //只读的地址字符串列表
+    public List<String> getAddressList() {
+        return addressList;
+    }
+
+    //加入一个地址后的新快照；地址已存在时更新其元数据，元数据相同时返回自身
+    ServiceSnapshot with(long newVersion, Endpoint endpoint, ProviderMetadata meta) {
+        int index = indexOf(endpoint.getAddress());
+        if (index >= 0) {
+            if (metadata[index].equals(meta)) {
+                return this;
+            }
+            ProviderMetadata[] nextMetadata = metadata.clone();
+            nextMetadata[index] = meta;
+            return new ServiceSnapshot(serviceName, newVersion, endpoints, nextMetadata);
+        }
+        Endpoint[] next = Arrays.copyOf(endpoints, endpoints.length + 1);
+        next[endpoints.length] = endpoint;
+        ProviderMetadata[] nextMetadata = Arrays.copyOf(metadata, metadata.length + 1);
+        nextMetadata[metadata.length] = meta;
+        return new ServiceSnapshot(serviceName, newVersion, next, nextMetadata);
+    }
+
+    //移除一个地址后的新快照，不存在时返回自身
+    ServiceSnapshot without(long newVersion, String address) {
+        int index = indexOf(address);
+        if (index < 0) {
+            return this;
+        }
+        Endpoint[] next = new Endpoint[endpoints.length - 1];
+        ProviderMetadata[] nextMetadata = new ProviderMetadata[metadata.length - 1];
+        System.arraycopy(endpoints, 0, next, 0, index);
+        System.arraycopy(endpoints, index + 1, next, index, endpoints.length - index - 1);
+        System.arraycopy(metadata, 0, nextMetadata, 0, index);
+        System.arraycopy(metadata, index + 1, nextMetadata, index, metadata.length - index - 1);
+        return new ServiceSnapshot(serviceName, newVersion, next, nextMetadata);
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceSnapshot(service=" + serviceName + ", version=" + version + ", addresses=" + addressList + ")";
+    }
+}
@@ -1,109 +1,50 @@
 package com.kama.client.circuitbreaker;
 
-import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
- * @ClassName CircuitBreaker
- * @Description 熔断器的状态
+ * @InterfaceName CircuitBreaker
+ * @Description 熔断器接口
+ * 放行的请求在完成时调用 recordSuccess 或 recordFailure 上报结果；使用 acquirePermission 取得的许可上报时，
+ * 熔断器只统计与许可属于同一阶段的结果，状态切换前放行的请求迟到的结果不会计入新阶段
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:45
+ * @LastChangeDate 2024-12-17 22:30
  * @Version v5.0
  */
-@Slf4j
-public class CircuitBreaker {
-    //当前状态
-    private CircuitBreakerState state = CircuitBreakerState.CLOSED;
-    private AtomicInteger failureCount = new AtomicInteger(0);
-    private AtomicInteger successCount = new AtomicInteger(0);
-    private AtomicInteger requestCount = new AtomicInteger(0);
-    //失败次数阈值
-    private final int failureThreshold;
-    //半开启-》关闭状态的成功次数比例
-    private final double halfOpenSuccessRate;
-    //恢复时间
-    private final long retryTimePeriod;
-    //上一次失败时间
-    private long lastFailureTime = 0;
-
-    public CircuitBreaker(int failureThreshold, double halfOpenSuccessRate, long retryTimePeriod) {
-        this.failureThreshold = failureThreshold;
-        this.halfOpenSuccessRate = halfOpenSuccessRate;
-        this.retryTimePeriod = retryTimePeriod;
-    }
 
+public interface CircuitBreaker {
     //查看当前熔断器是否允许请求通过
-    public synchronized boolean allowRequest() {
-        long currentTime = System.currentTimeMillis();
-        log.info("熔断前检查, 当前失败次数：{}", failureCount);
-        switch (state) {
-            case OPEN:
-                if (currentTime - lastFailureTime > retryTimePeriod) {
-                    state = CircuitBreakerState.HALF_OPEN;
-                    resetCounts();
-                    log.info("熔断已解除，进入半开启状态，允许请求通过");
-                    return true;
-                }
-                log.warn("熔断生效中，拒绝请求！");
-                return false;
-            case HALF_OPEN:
-                requestCount.incrementAndGet();
-                log.info("当前为半开启状态，计数请求");
-                return true;
-            case CLOSED:
-            default:
-                log.info("当前为正常状态，允许请求通过");
-                return true;
-        }
+    default boolean allowRequest() {
+        return acquirePermission() != null;
     }
 
+    //允许请求通过时返回本次请求的许可（对调用方不透明），拒绝时返回 null
+    Object acquirePermission();
+
     //记录成功
-    public synchronized void recordSuccess() {
-        if (state == CircuitBreakerState.HALF_OPEN) {
-            successCount.incrementAndGet();
-            if (successCount.get() >= halfOpenSuccessRate * requestCount.get()) {
-                state = CircuitBreakerState.CLOSED;
-                resetCounts();
-                log.info("成功次数已达到阈值，熔断器切换至关闭状态");
-            }
-        } else {
-            resetCounts();
-            log.info("熔断器处于关闭状态，重置计数器");
-        }
-    }
+    void recordSuccess();
 
     //记录失败
-    public synchronized void recordFailure() {
-        failureCount.incrementAndGet();
-        log.error("记录失败，当前失败次数：{}", failureCount);
-        lastFailureTime = System.currentTimeMillis();
+    void recordFailure();
 
-        if (state == CircuitBreakerState.HALF_OPEN) {
-            state = CircuitBreakerState.OPEN;
-            lastFailureTime = System.currentTimeMillis();
-            log.warn("半开启状态下发生失败，熔断器切换至开启状态");
-        } else if (failureCount.get() >= failureThreshold) {
-            state = CircuitBreakerState.OPEN;
-            log.error("失败次数已超过阈值，熔断器切换至开启状态");
-        }
+    //记录成功并反馈本次调用耗时（纳秒），用于慢调用统计
+    default void recordSuccess(long durationNanos) {
+        recordSuccess();
     }
 
-    //重置次数
-    private void resetCounts() {
-        failureCount.set(0);
-        successCount.set(0);
-        requestCount.set(0);
+    //记录失败并反馈本次调用耗时（纳秒）
+    default void recordFailure(long durationNanos) {
+        recordFailure();
     }
 
-    public CircuitBreakerState getState() {
-        return state;
+    //用放行时取得的许可记录成功，许可所属的阶段已结束时忽略
+    default void recordSuccess(Object permission, long durationNanos) {
+        recordSuccess(durationNanos);
     }
-}
 
-enum CircuitBreakerState {
-    //关闭，开启，半开启
-    CLOSED, OPEN, HALF_OPEN
+    //用放行时取得的许可记录失败，许可所属的阶段已结束时忽略
+    default void recordFailure(Object permission, long durationNanos) {
+        recordFailure(durationNanos);
+    }
+
+    //当前状态
+    CircuitBreakerState getState();
 }
@@ -1,28 +1,48 @@
 package com.kama.client.circuitbreaker;
 
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.config.KRpcConfig;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * @ClassName CircuitBreakerState
+ * @ClassName CircuitBreakerProvider
  * @Description 提供熔断器
+ * 熔断粒度为服务地址加方法签名：同名的重载方法、不同接口的同名方法以及同一方法在不同地址上各自熔断
+ * 按 Method 缓存该方法的熔断器集合，查找不加锁，只在首次调用时创建
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:47
+ * @LastChangeDate 2024-12-17 23:00
  * @Version v5.0
  */
 @Slf4j
 public class CircuitBreakerProvider {
-    // 使用线程安全的 ConcurrentHashMap
-    private Map<String, CircuitBreaker> circuitBreakerMap = new ConcurrentHashMap<>();
+    //key: 接口方法，value: 该方法在各地址上的熔断器
+    private final Map<Method, MethodCircuitBreakers> circuitBreakerMap = new ConcurrentHashMap<>();
+    private final KRpcConfig config;
 
-    public synchronized CircuitBreaker getCircuitBreaker(String serviceName) {
-        // 使用 computeIfAbsent，避免手动同步
-        return circuitBreakerMap.computeIfAbsent(serviceName, key -> {
-            log.info("服务 [{}] 不存在熔断器，创建新的熔断器实例", serviceName);
-            // 创建并返回新熔断器
-            return new CircuitBreaker(1, 0.5, 10000);
-        });
+    public CircuitBreakerProvider() {
+        this(new KRpcConfig());
+    }
+
+    public CircuitBreakerProvider(KRpcConfig config) {
+        this.config = config;
+    }
+
+    public MethodCircuitBreakers getCircuitBreakers(Method method) {
+        MethodCircuitBreakers circuitBreakers = circuitBreakerMap.get(method);
+        if (circuitBreakers != null) {
+            return circuitBreakers;
+        }
+        return circuitBreakerMap.computeIfAbsent(method, key -> new MethodCircuitBreakers(key, config));
+    }
+
+    //地址快照变化时通知各方法的熔断器集合，清除已下线地址上的熔断器
+    public void onSnapshotChanged(ServiceSnapshot snapshot) {
+        for (MethodCircuitBreakers circuitBreakers : circuitBreakerMap.values()) {
+            circuitBreakers.onSnapshotChanged(snapshot);
+        }
     }
 }
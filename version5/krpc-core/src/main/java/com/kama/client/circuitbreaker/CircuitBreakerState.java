@@ -0,0 +1,13 @@
+package com.kama.client.circuitbreaker;
+
+/**
+ * @ClassName CircuitBreakerState
+ * @Description 熔断器的状态
+ * @Author Tong
+ * @LastChangeDate 2024-12-16 18:00
+ * @Version v5.0
+ */
+public enum CircuitBreakerState {
+    //关闭，开启，半开启
+    CLOSED, OPEN, HALF_OPEN
+}
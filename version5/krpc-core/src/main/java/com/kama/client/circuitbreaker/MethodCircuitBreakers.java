@@ -0,0 +1,92 @@
+package com.kama.client.circuitbreaker;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.circuitbreaker.impl.SlidingWindowCircuitBreaker;
+import com.kama.config.KRpcConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName MethodCircuitBreakers
+ * @Description 一个接口方法在各服务地址上的熔断器，由 CircuitBreakerProvider 按 Method 创建并缓存
+ * 方法签名（接口名#方法名(参数类型)）在创建时算好，调用路径上只做一次按地址的 map 查找
+ * 服务地址下线时由地址快照变化通知清除其熔断器，map 不会随地址的上下线无限增长
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 23:00
+ * @Version v5.0
+ */
+@Slf4j
+public class MethodCircuitBreakers {
+    //方法签名，如 com.kama.service.UserService#getUserByUserId(java.lang.Integer)
+    private final String signature;
+    //方法所属的服务名（接口名），只处理该服务的快照变化
+    private final String serviceName;
+    private final KRpcConfig config;
+    //已处理的最新快照版本，乱序到达的旧快照不用于清除
+    private final AtomicLong snapshotVersion = new AtomicLong();
+    //key: 服务地址，value: 该地址上此方法的熔断器
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public MethodCircuitBreakers(Method method, KRpcConfig config) {
+        this.signature = signatureOf(method);
+        this.serviceName = method.getDeclaringClass().getName();
+        this.config = config;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    //获取地址上此方法的熔断器，不存在时创建；没有地址时调用方应直接拒绝请求，不为其创建熔断器
+    public CircuitBreaker get(Endpoint endpoint) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("Endpoint cannot be null");
+        }
+        String address = endpoint.getAddress();
+        CircuitBreaker circuitBreaker = circuitBreakers.get(address);
+        if (circuitBreaker != null) {
+            return circuitBreaker;
+        }
+        return circuitBreakers.computeIfAbsent(address, key -> {
+            log.info("方法 [{}] 在地址 [{}] 上不存在熔断器，创建新的熔断器实例", signature, key);
+            return new SlidingWindowCircuitBreaker(key + "/" + signature, config);
+        });
+    }
+
+    //地址上此方法的熔断器是否处于开启或半开启状态，不创建熔断器
+    public boolean isRejecting(Endpoint endpoint) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint.getAddress());
+        return circuitBreaker != null && circuitBreaker.getState() != CircuitBreakerState.CLOSED;
+    }
+
+    //服务的地址快照变化：清除已下线地址上的熔断器，地址重新上线时创建新的熔断器
+    public void onSnapshotChanged(ServiceSnapshot snapshot) {
+        if (!serviceName.equals(snapshot.getServiceName())) {
+            return;
+        }
+        //全部下线时的空快照没有版本号，直接清除
+        if (!snapshot.isEmpty() && snapshotVersion.accumulateAndGet(snapshot.getVersion(), Math::max) != snapshot.getVersion()) {
+            return;
+        }
+        circuitBreakers.keySet().removeIf(address -> !snapshot.contains(address));
+    }
+
+    // 接口名#方法名(参数类型,...)
+    public static String signatureOf(Method method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getDeclaringClass().getName()).append("#").append(method.getName()).append("(");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(parameterTypes[i].getName());
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -0,0 +1,318 @@
+package com.kama.client.circuitbreaker.impl;
+
+import com.kama.client.circuitbreaker.CircuitBreaker;
+import com.kama.client.circuitbreaker.CircuitBreakerState;
+import com.kama.config.KRpcConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName SlidingWindowCircuitBreaker
+ * @Description 滑动窗口熔断器：按时间把窗口分成若干个桶，组成环形数组，每个桶用 LongAdder 记录调用数、失败数与慢调用数
+ * 窗口内调用数达到最小请求数后，失败率或慢调用率超过阈值即开启；开启一段时间后进入半开启，只放行有限个探测请求，
+ * 探测全部成功则关闭，出现失败或慢调用则重新开启
+ * 状态与其附属数据（关闭时的窗口、开启的截止时间、半开启的许可）放在一个不可变的阶段对象里，状态转换是对它的一次 CAS，
+ * 不使用监视器锁；关闭状态下的放行与成功记录只读取阶段、累加计数，不写共享的状态
+ * 放行时返回的许可就是当时的阶段对象，按许可上报的结果只在该阶段仍是当前阶段时计入，
+ * 关闭状态或上一轮半开启放行的请求迟到的结果不会计入本轮半开启的探测
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 22:30
+ * @Version v5.0
+ */
+@Slf4j
+public class SlidingWindowCircuitBreaker implements CircuitBreaker {
+    public static final long DEFAULT_WINDOW_MILLIS = 10000;
+    public static final int DEFAULT_BUCKETS = 10;
+    public static final int DEFAULT_MINIMUM_REQUESTS = 20;
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    public static final double DEFAULT_SLOW_CALL_RATE = 0.8;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 2000;
+    public static final long DEFAULT_OPEN_MILLIS = 10000;
+    public static final int DEFAULT_HALF_OPEN_PERMITS = 5;
+
+    //熔断器名称，用于日志
+    private final String name;
+    //每个桶覆盖的时长（纳秒）与桶数
+    private final long bucketNanos;
+    private final int bucketCount;
+    //窗口内至少需要的调用数，不足时不按比例判定
+    private final int minimumRequests;
+    //失败率阈值
+    private final double failureRateThreshold;
+    //慢调用率阈值
+    private final double slowCallRateThreshold;
+    //耗时达到多少纳秒计为慢调用
+    private final long slowCallNanos;
+    //开启状态持续的时长（纳秒）
+    private final long openNanos;
+    //半开启状态下放行的探测请求数
+    private final int halfOpenPermits;
+    //计时起点，桶序号按相对它的时间计算，避免 nanoTime 为负值
+    private final long startNanos;
+    //当前阶段
+    private final AtomicReference<Phase> phase;
+
+    public SlidingWindowCircuitBreaker(String name) {
+        this(name, DEFAULT_WINDOW_MILLIS, DEFAULT_BUCKETS, DEFAULT_MINIMUM_REQUESTS, DEFAULT_FAILURE_RATE,
+                DEFAULT_SLOW_CALL_RATE, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_OPEN_MILLIS, DEFAULT_HALF_OPEN_PERMITS);
+    }
+
+    //按配置创建
+    public SlidingWindowCircuitBreaker(String name, KRpcConfig config) {
+        this(name, config.getCircuitBreakerWindowMillis(), config.getCircuitBreakerBuckets(),
+                config.getCircuitBreakerMinimumRequests(), config.getCircuitBreakerFailureRate(),
+                config.getCircuitBreakerSlowCallRate(), config.getCircuitBreakerSlowCallMillis(),
+                config.getCircuitBreakerOpenMillis(), config.getCircuitBreakerHalfOpenPermits());
+    }
+
+    /**
+     * @param windowMillis          统计窗口时长（毫秒）
+     * @param buckets               窗口划分的桶数，窗口每次滑动一个桶的时长
+     * @param minimumRequests       窗口内至少需要的调用数
+     * @param failureRateThreshold  失败率阈值，0~1
+     * @param slowCallRateThreshold 慢调用率阈值，0~1，大于1时不按慢调用开启
+     * @param slowCallMillis        耗时达到多少毫秒计为慢调用
+     * @param openMillis            开启状态持续的时长（毫秒）
+     * @param halfOpenPermits       半开启状态下放行的探测请求数
+     */
+    public SlidingWindowCircuitBreaker(String name, long windowMillis, int buckets, int minimumRequests,
+                                       double failureRateThreshold, double slowCallRateThreshold, long slowCallMillis,
+                                       long openMillis, int halfOpenPermits) {
+        this.name = name;
+        this.bucketCount = Math.max(buckets, 1);
+        this.bucketNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(windowMillis) / bucketCount, 1L);
+        this.minimumRequests = Math.max(minimumRequests, 1);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenPermits = Math.max(halfOpenPermits, 1);
+        this.startNanos = System.nanoTime();
+        this.phase = new AtomicReference<>(Phase.closed(bucketCount));
+    }
+
+    @Override
+    public Object acquirePermission() {
+        for (;;) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    long now = System.nanoTime() - startNanos;
+                    if (now < current.until) {
+                        return null;
+                    }
+                    //开启到期，进入半开启，只有一个线程转换成功，其余线程重新读取阶段
+                    if (phase.compareAndSet(current, Phase.halfOpen(now + openNanos))) {
+                        log.info("熔断器[{}]进入半开启状态，放行{}个探测请求", name, halfOpenPermits);
+                    }
+                    break;
+                case HALF_OPEN:
+                default:
+                    if (tryAcquirePermit(current)) {
+                        return current;
+                    }
+                    //探测请求可能不上报结果（如调用线程异常退出），许可不会归还，超时后进入新一轮半开启重新发放，
+                    //上一轮的探测结果随之作废
+                    long time = System.nanoTime() - startNanos;
+                    if (time < current.until) {
+                        return null;
+                    }
+                    phase.compareAndSet(current, Phase.halfOpen(time + openNanos));
+                    break;
+            }
+        }
+    }
+
+    private boolean tryAcquirePermit(Phase current) {
+        for (;;) {
+            int issued = current.permits.get();
+            if (issued >= halfOpenPermits) {
+                return false;
+            }
+            if (current.permits.compareAndSet(issued, issued + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void recordSuccess() {
+        recordSuccess(0L);
+    }
+
+    @Override
+    public void recordFailure() {
+        recordFailure(0L);
+    }
+
+    @Override
+    public void recordSuccess(long durationNanos) {
+        record(phase.get(), false, durationNanos >= slowCallNanos);
+    }
+
+    @Override
+    public void recordFailure(long durationNanos) {
+        record(phase.get(), true, durationNanos >= slowCallNanos);
+    }
+
+    @Override
+    public void recordSuccess(Object permission, long durationNanos) {
+        recordIfCurrent(permission, false, durationNanos >= slowCallNanos);
+    }
+
+    @Override
+    public void recordFailure(Object permission, long durationNanos) {
+        recordIfCurrent(permission, true, durationNanos >= slowCallNanos);
+    }
+
+    //许可所属的阶段已被替换时，结果属于已经结束的阶段，直接忽略
+    private void recordIfCurrent(Object permission, boolean failure, boolean slow) {
+        Phase current = phase.get();
+        if (permission == current) {
+            record(current, failure, slow);
+        }
+    }
+
+    private void record(Phase current, boolean failure, boolean slow) {
+        long now = System.nanoTime() - startNanos;
+        switch (current.state) {
+            case CLOSED:
+                Bucket bucket = bucket(current.window, now);
+                bucket.calls.increment();
+                if (failure) {
+                    bucket.failures.increment();
+                }
+                if (slow) {
+                    bucket.slowCalls.increment();
+                }
+                //只有失败与慢调用会使比例上升，成功的调用不做判定
+                if (failure || slow) {
+                    checkThresholds(current, now);
+                }
+                break;
+            case HALF_OPEN:
+                if (failure || slow) {
+                    if (phase.compareAndSet(current, Phase.open(now + openNanos))) {
+                        log.warn("熔断器[{}]半开启状态下探测请求{}，重新开启", name, failure ? "失败" : "过慢");
+                    }
+                } else if (current.successes.incrementAndGet() >= halfOpenPermits
+                        && phase.compareAndSet(current, Phase.closed(bucketCount))) {
+                    log.info("熔断器[{}]探测请求全部成功，切换至关闭状态", name);
+                }
+                break;
+            case OPEN:
+            default:
+                //不带许可上报的、开启前放行的请求迟到的结果，不影响状态
+                break;
+        }
+    }
+
+    //统计窗口内的调用，超过阈值时开启
+    private void checkThresholds(Phase current, long now) {
+        long index = now / bucketNanos;
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            Bucket bucket = current.window.get(i);
+            if (bucket.index > index - bucketCount && bucket.index <= index) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+            }
+        }
+        if (calls < minimumRequests) {
+            return;
+        }
+        double failureRate = (double) failures / calls;
+        double slowCallRate = (double) slowCalls / calls;
+        if ((failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold)
+                && phase.compareAndSet(current, Phase.open(now + openNanos))) {
+            log.warn("熔断器[{}]开启：窗口内{}次调用，失败率{}，慢调用率{}", name, calls,
+                    String.format("%.2f", failureRate), String.format("%.2f", slowCallRate));
+        }
+    }
+
+    //当前时间所在的桶，桶已过期时用新桶替换
+    private Bucket bucket(AtomicReferenceArray<Bucket> window, long now) {
+        long index = now / bucketNanos;
+        int slot = (int) (index % bucketCount);
+        for (;;) {
+            Bucket bucket = window.get(slot);
+            //线程取时间后被挂起时，槽位可能已被更新的桶占用，计入更新的桶
+            if (bucket.index >= index) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(index);
+            if (window.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    @Override
+    public CircuitBreakerState getState() {
+        return phase.get().state;
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindowCircuitBreaker[" + name + "," + getState() + "]";
+    }
+
+    // 时间窗口中的一个桶，index 为桶序号（相对时间 / 桶时长）
+    private static final class Bucket {
+        private final long index;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        private Bucket(long index) {
+            this.index = index;
+        }
+    }
+
+    // 熔断器的一个阶段，创建后状态不变，状态转换即替换阶段对象
+    private static final class Phase {
+        private final CircuitBreakerState state;
+        //关闭状态的统计窗口，每次关闭时重新创建，旧窗口的计数自然丢弃
+        private final AtomicReferenceArray<Bucket> window;
+        //开启状态的截止时间，半开启状态重新发放许可的时间
+        private final long until;
+        //半开启状态已发放的许可数与成功的探测数
+        private final AtomicInteger permits;
+        private final AtomicInteger successes;
+
+        private Phase(CircuitBreakerState state, AtomicReferenceArray<Bucket> window, long until) {
+            this.state = state;
+            this.window = window;
+            this.until = until;
+            this.permits = state == CircuitBreakerState.HALF_OPEN ? new AtomicInteger(0) : null;
+            this.successes = state == CircuitBreakerState.HALF_OPEN ? new AtomicInteger(0) : null;
+        }
+
+        private static Phase closed(int bucketCount) {
+            AtomicReferenceArray<Bucket> window = new AtomicReferenceArray<>(bucketCount);
+            Bucket empty = new Bucket(Long.MIN_VALUE);
+            for (int i = 0; i < bucketCount; i++) {
+                window.set(i, empty);
+            }
+            return new Phase(CircuitBreakerState.CLOSED, window, 0L);
+        }
+
+        private static Phase open(long until) {
+            return new Phase(CircuitBreakerState.OPEN, null, until);
+        }
+
+        private static Phase halfOpen(long permitDeadline) {
+            return new Phase(CircuitBreakerState.HALF_OPEN, null, permitDeadline);
+        }
+    }
+}
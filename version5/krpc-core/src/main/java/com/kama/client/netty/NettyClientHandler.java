@@ -1,29 +1,50 @@
 package com.kama.client.netty;
 
+import common.message.Heartbeat;
 import common.message.RpcResponse;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.AttributeKey;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.channels.ClosedChannelException;
+
 /**
  * @ClassName NettyClientHandler
  * @Description 客户端处理器
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:15
+ * @LastChangeDate 2024-12-13 16:00
  * @Version v5.0
  */
 @Slf4j
+@AllArgsConstructor
 public class NettyClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
-
+    //在途请求表，连接复用后按请求ID分发响应
+    private final PendingRequests pendingRequests;
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RpcResponse response) throws Exception {
-        // 接收到response, 给channel设计别名，让sendRequest里读取response
-        AttributeKey<RpcResponse> RESPONSE_KEY = AttributeKey.valueOf("RPCResponse");
-        // 将响应存入 Channel 属性
-        ctx.channel().attr(RESPONSE_KEY).set(response);
-        ctx.channel().close();
+        // 接收到response，唤醒等待该请求ID的调用方，连接保持不关闭
+        pendingRequests.complete(response);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，该连接上尚未返回的请求全部失败
+        pendingRequests.failChannel(ctx.channel(), new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            // 一段时间没有发出请求，发送心跳保活
+            ctx.writeAndFlush(Heartbeat.INSTANCE).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
     }
 
     @Override
@@ -1,24 +1,31 @@
 package com.kama.client.netty;
 
 
+import com.kama.KRpcApplication;
 import common.serializer.mycoder.MyDecoder;
 import common.serializer.mycoder.MyEncoder;
 import common.serializer.myserializer.Serializer;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @ClassName NettyClientInitializer
  * @Description 配置自定义的编码器以及Handler
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:16
+ * @LastChangeDate 2024-12-13 16:00
  * @Version v5.0
  */
 @Slf4j
+@AllArgsConstructor
 public class NettyClientInitializer extends ChannelInitializer<SocketChannel> {
-
+    //所有连接共享的在途请求表
+    private final PendingRequests pendingRequests;
 
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
@@ -27,14 +34,27 @@ public class NettyClientInitializer extends ChannelInitializer<SocketChannel> {
         // 使用自定义的编码器和解码器
         try {
             // 根据传入的序列化器类型初始化编码器
-            pipeline.addLast(new MyEncoder(Serializer.getSerializerByCode(3)));
-            pipeline.addLast(new MyDecoder());
-            pipeline.addLast(new NettyClientHandler());
+            Serializer serializer = getSerializer();
+            //连接空闲时发送心跳，避免被服务端当作空闲连接关闭
+            int heartbeatInterval = KRpcApplication.getRpcConfig().getHeartbeatIntervalSeconds();
+            if (heartbeatInterval > 0) {
+                pipeline.addLast(new IdleStateHandler(0, heartbeatInterval, 0, TimeUnit.SECONDS));
+            }
+            pipeline.addLast(new MyEncoder(serializer,
+                    KRpcApplication.getRpcConfig().getProtocolVersion().byteValue()));
+            pipeline.addLast(new MyDecoder(KRpcApplication.getRpcConfig().getMaxFrameLength()));
+            pipeline.addLast(new NettyClientHandler(pendingRequests));
 
-            log.info("Netty client pipeline initialized with serializer type: {}",Serializer.getSerializerByCode(3).toString());
+            log.info("Netty client pipeline initialized with serializer type: {}", serializer);
         } catch (Exception e) {
             log.error("Error initializing Netty client pipeline", e);
             throw e;  // 重新抛出异常，确保管道初始化失败时处理正确
         }
     }
+
+    //按配置选择序列化器，未知名称时使用Hessian
+    private Serializer getSerializer() {
+        Serializer serializer = Serializer.getSerializerByName(KRpcApplication.getRpcConfig().getSerializer());
+        return serializer != null ? serializer : Serializer.getSerializerByCode(3);
+    }
 }
@@ -0,0 +1,107 @@
+package com.kama.client.netty;
+
+import com.kama.client.pool.PooledChannel;
+import common.message.RpcResponse;
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName PendingRequests
+ * @Description 在途请求表，按请求ID匹配复用连接上返回的响应，并负责请求超时
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 19:00
+ * @Version v5.0
+ */
+@Slf4j
+public class PendingRequests {
+    //key: requestId 请求ID
+    //value: 等待响应的请求
+    private final Map<Long, PendingRequest> pendingMap = new ConcurrentHashMap<>();
+    //时间轮：所有请求的超时共用一个调度线程，不必为每次调用创建定时任务
+    private final Timer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    //登记一个已发出的请求，返回响应对应的future，超过timeoutMillis未收到响应则以超时结束
+    public CompletableFuture<RpcResponse> put(long requestId, PooledChannel pooledChannel, long timeoutMillis) {
+        PendingRequest pendingRequest = new PendingRequest(pooledChannel);
+        pendingMap.put(requestId, pendingRequest);
+        pendingRequest.timeout = timer.newTimeout(t -> expire(requestId, timeoutMillis), timeoutMillis, TimeUnit.MILLISECONDS);
+        return pendingRequest.future;
+    }
+
+    //收到响应，唤醒对应的请求
+    public void complete(RpcResponse response) {
+        PendingRequest pendingRequest = pendingMap.remove(response.getRequestId());
+        if (pendingRequest == null) {
+            log.warn("收到未知请求的响应，requestId: {}", response.getRequestId());
+            return;
+        }
+        pendingRequest.pooledChannel.markResponded();
+        pendingRequest.finish();
+        pendingRequest.future.complete(response);
+    }
+
+    //请求发送失败
+    public void fail(long requestId, Throwable cause) {
+        PendingRequest pendingRequest = pendingMap.remove(requestId);
+        if (pendingRequest != null) {
+            pendingRequest.finish();
+            pendingRequest.future.completeExceptionally(cause);
+        }
+    }
+
+    //请求超时，迟到的响应会因找不到请求ID而被丢弃
+    private void expire(long requestId, long timeoutMillis) {
+        PendingRequest pendingRequest = pendingMap.remove(requestId);
+        if (pendingRequest != null) {
+            log.warn("请求超时，requestId: {}，超时时间: {}ms", requestId, timeoutMillis);
+            pendingRequest.pooledChannel.release();
+            pendingRequest.future.complete(RpcResponse.timeout("请求超时: " + timeoutMillis + "ms"));
+        }
+    }
+
+    //连接断开时，让该连接上所有在途请求失败
+    public void failChannel(Channel channel, Throwable cause) {
+        pendingMap.forEach((requestId, pendingRequest) -> {
+            if (pendingRequest.pooledChannel.getChannel() == channel) {
+                fail(requestId, cause);
+            }
+        });
+    }
+
+    public int size() {
+        return pendingMap.size();
+    }
+
+    public void close() {
+        timer.stop();
+    }
+
+    private static class PendingRequest {
+        private final PooledChannel pooledChannel;
+        private final CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        private volatile Timeout timeout;
+
+        private PendingRequest(PooledChannel pooledChannel) {
+            this.pooledChannel = pooledChannel;
+        }
+
+        //请求正常结束：归还连接名额并取消超时任务
+        private void finish() {
+            pooledChannel.release();
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.kama.client.outlier;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.EndpointStats;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.config.KRpcConfig;
+import com.kama.metric.RpcMetrics;
+import common.message.RpcResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName OutlierDetector
+ * @Description 客户端的异常实例检测：把表现异常的服务提供者暂时从交给负载均衡的地址快照中摘除，其流量由其余实例承担
+ * 判定条件：连续失败次数达到阈值（调用完成时立即判定）；检测周期内错误率过高，或延迟 EWMA 远高于同服务实例的中位数（周期性判定）
+ * 失败只包括没有响应（连接异常）、超时与服务端5xx错误；业务异常与限流拒绝说明实例仍在正常应答，不计入
+ * 摘除时长随该实例被摘除的次数指数增长，健康的检测周期后逐步回落；同一服务被摘除的实例数不超过配置的比例
+ * 摘除与恢复计入指标 rpc.client.outlier.ejections / restores，当前被摘除的实例数为 rpc.client.outlier.ejected
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 16:30
+ * @Version v5.0
+ */
+@Slf4j
+public class OutlierDetector implements AutoCloseable {
+    public static final String METRIC_EJECTIONS = "rpc.client.outlier.ejections";
+    public static final String METRIC_RESTORES = "rpc.client.outlier.restores";
+    public static final String METRIC_EJECTED = "rpc.client.outlier.ejected";
+    //摘除时长倍数的指数上限，避免移位溢出
+    private static final int MAX_BACKOFF_SHIFT = 16;
+    //按延迟判定时同服务至少需要的有延迟样本的实例数
+    private static final int MIN_LATENCY_HOSTS = 3;
+
+    private final ServiceCache cache;
+    private final boolean enabled;
+    private final int consecutiveFailures;
+    private final double errorRate;
+    private final int minRequests;
+    private final double latencyFactor;
+    private final long baseEjectionMillis;
+    private final long maxEjectionMillis;
+    private final int maxEjectionPercent;
+    //按服务名记录的摘除状态版本，该服务有实例摘除或恢复时递增，只使该服务缓存的过滤视图失效
+    private final Map<String, AtomicLong> epochs = new ConcurrentHashMap<>();
+    //按服务名缓存的过滤视图
+    private final Map<String, FilteredView> views = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public OutlierDetector(ServiceCache cache, KRpcConfig config) {
+        this.cache = cache;
+        this.enabled = config.getOutlierDetection();
+        this.consecutiveFailures = config.getOutlierConsecutiveFailures();
+        this.errorRate = config.getOutlierErrorRate();
+        this.minRequests = config.getOutlierMinRequests();
+        this.latencyFactor = config.getOutlierLatencyFactor();
+        this.baseEjectionMillis = config.getOutlierBaseEjectionMillis();
+        this.maxEjectionMillis = config.getOutlierMaxEjectionMillis();
+        this.maxEjectionPercent = config.getOutlierMaxEjectionPercent();
+        if (enabled) {
+            long interval = config.getOutlierIntervalMillis();
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "krpc-outlier-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+            RpcMetrics.gauge(METRIC_EJECTED, this::countEjected);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    //没有响应（连接异常）、超时与服务端5xx错误说明实例本身有问题；业务异常（400）与限流拒绝（429）说明实例仍在正常应答
+    public static boolean isEndpointFailure(RpcResponse response) {
+        return response == null || response.getCode() >= 500;
+    }
+
+    /**
+     * 一次调用结束：减少在途计数、记录延迟并上报调用结果
+     * 实例故障时往往很快返回，按实际耗时计入延迟会让负载均衡偏向故障实例，因此只有实例故障按不短于超时时间的耗时计入；
+     * 业务异常与限流拒绝按实际耗时计入，也不上报
+     */
+    public void endRequest(String serviceName, Endpoint endpoint, RpcResponse response, long rttNanos, long timeoutNanos) {
+        boolean failure = isEndpointFailure(response);
+        endpoint.getStats().endRequest(failure ? Math.max(rttNanos, timeoutNanos) : rttNanos);
+        if (failure || response.getCode() == 200) {
+            reportResult(serviceName, endpoint, !failure);
+        }
+    }
+
+    /**
+     * 记录一次调用结果，连续失败达到阈值时立即摘除
+     */
+    public void reportResult(String serviceName, Endpoint endpoint, boolean success) {
+        if (!enabled || endpoint == null) {
+            return;
+        }
+        EndpointStats stats = endpoint.getStats();
+        if (success) {
+            stats.recordSuccess();
+        } else if (stats.recordFailure() >= consecutiveFailures) {
+            eject(serviceName, endpoint, "连续失败" + consecutiveFailures + "次");
+        }
+    }
+
+    /**
+     * 返回排除了摘除期内实例的快照；没有实例被摘除时返回原快照
+     * 结果按原快照版本与摘除状态缓存，摘除状态不变时不重新生成，负载均衡按版本缓存的结构也随之复用
+     */
+    public ServiceSnapshot filter(ServiceSnapshot snapshot) {
+        if (!enabled || snapshot.isEmpty()) {
+            return snapshot;
+        }
+        long now = System.currentTimeMillis();
+        AtomicLong epoch = epochOf(snapshot.getServiceName());
+        FilteredView view = views.get(snapshot.getServiceName());
+        if (view != null && view.sourceVersion == snapshot.getVersion() && view.epoch == epoch.get() && now < view.expiresAt) {
+            return view.snapshot;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            restoreIfExpired(snapshot.getServiceName(), snapshot.getEndpoint(i), now);
+        }
+        long currentEpoch = epoch.get();
+        List<Endpoint> excluded = new ArrayList<>();
+        long expiresAt = Long.MAX_VALUE;
+        for (int i = 0; i < snapshot.size(); i++) {
+            EndpointStats stats = snapshot.getEndpoint(i).getStats();
+            if (stats.isEjected(now)) {
+                excluded.add(snapshot.getEndpoint(i));
+                expiresAt = Math.min(expiresAt, stats.getEjectedUntil());
+            }
+        }
+        ServiceSnapshot result;
+        if (excluded.isEmpty() || excluded.size() == snapshot.size()) {
+            //全部被摘除时不过滤，避免服务完全不可用
+            result = snapshot;
+        } else if (view != null && view.sourceVersion == snapshot.getVersion() && view.excluded.equals(excluded)) {
+            //摘除状态有过变化（如恢复后又被摘除），但被摘除的实例与上次相同
+            result = view.snapshot;
+        } else {
+            result = cache.exclude(snapshot, excluded::contains);
+        }
+        views.put(snapshot.getServiceName(), new FilteredView(snapshot.getVersion(), currentEpoch, expiresAt, excluded, result));
+        return result;
+    }
+
+    //周期性检测：恢复到期的实例，按本周期的错误率与延迟判定异常实例
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long nanoNow = System.nanoTime();
+            for (ServiceSnapshot snapshot : cache.getSnapshots()) {
+                double medianLatency = medianLatency(snapshot, nanoNow);
+                for (int i = 0; i < snapshot.size(); i++) {
+                    Endpoint endpoint = snapshot.getEndpoint(i);
+                    EndpointStats stats = endpoint.getStats();
+                    restoreIfExpired(snapshot.getServiceName(), endpoint, now);
+                    long successes = stats.drainIntervalSuccesses();
+                    long failures = stats.drainIntervalFailures();
+                    long total = successes + failures;
+                    if (stats.isEjected(now)) {
+                        continue;
+                    }
+                    if (total >= minRequests && failures >= errorRate * total) {
+                        eject(snapshot.getServiceName(), endpoint, String.format("错误率%.2f", (double) failures / total));
+                    } else if (total > 0 && medianLatency > 0 && stats.getEwmaNanos(nanoNow) > latencyFactor * medianLatency) {
+                        eject(snapshot.getServiceName(), endpoint, String.format("延迟%.2fms，中位数%.2fms",
+                                stats.getEwmaNanos(nanoNow) / 1e6, medianLatency / 1e6));
+                    } else if (failures == 0 && total > 0) {
+                        stats.decayEjectionCount();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("异常实例检测失败", e);
+        }
+    }
+
+    //同服务未被摘除且有延迟样本的实例的延迟中位数，实例数不足时返回 0
+    private double medianLatency(ServiceSnapshot snapshot, long nanoNow) {
+        double[] latencies = new double[snapshot.size()];
+        int count = 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < snapshot.size(); i++) {
+            EndpointStats stats = snapshot.getEndpoint(i).getStats();
+            double latency = stats.getEwmaNanos(nanoNow);
+            if (latency > 0 && !stats.isEjected(now)) {
+                latencies[count++] = latency;
+            }
+        }
+        if (count < MIN_LATENCY_HOSTS) {
+            return 0;
+        }
+        Arrays.sort(latencies, 0, count);
+        return latencies[count / 2];
+    }
+
+    //摘除实例，摘除时长随摘除次数指数增长；超过可摘除的比例时放弃
+    private synchronized void eject(String serviceName, Endpoint endpoint, String reason) {
+        long now = System.currentTimeMillis();
+        EndpointStats stats = endpoint.getStats();
+        restoreIfExpired(serviceName, endpoint, now);
+        if (stats.isEjected(now)) {
+            return;
+        }
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        int ejected = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.getEndpoint(i).getStats().isEjected(now)) {
+                ejected++;
+            }
+        }
+        if (ejected + 1 > (long) snapshot.size() * maxEjectionPercent / 100) {
+            log.warn("服务{}的实例{}异常（{}），但被摘除的实例已达上限{}%，不再摘除", serviceName, endpoint, reason, maxEjectionPercent);
+            return;
+        }
+        int shift = Math.min(stats.getEjectionCount(), MAX_BACKOFF_SHIFT);
+        long duration = Math.min(baseEjectionMillis << shift, maxEjectionMillis);
+        if (stats.tryEject(now + duration)) {
+            epochOf(serviceName).incrementAndGet();
+            RpcMetrics.increment(METRIC_EJECTIONS);
+            log.warn("服务{}的实例{}异常（{}），摘除{}ms", serviceName, endpoint, reason, duration);
+        }
+    }
+
+    private void restoreIfExpired(String serviceName, Endpoint endpoint, long now) {
+        if (endpoint.getStats().tryRestore(now)) {
+            epochOf(serviceName).incrementAndGet();
+            RpcMetrics.increment(METRIC_RESTORES);
+            log.info("服务{}的实例{}摘除到期，恢复", serviceName, endpoint);
+        }
+    }
+
+    private AtomicLong epochOf(String serviceName) {
+        AtomicLong epoch = epochs.get(serviceName);
+        return epoch != null ? epoch : epochs.computeIfAbsent(serviceName, key -> new AtomicLong());
+    }
+
+    //当前处于摘除期的实例数
+    private long countEjected() {
+        long now = System.currentTimeMillis();
+        long count = 0;
+        for (ServiceSnapshot snapshot : cache.getSnapshots()) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (snapshot.getEndpoint(i).getStats().isEjected(now)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // 某个原快照版本在某个摘除状态下的过滤结果
+    private static final class FilteredView {
+        private final long sourceVersion;
+        private final long epoch;
+        //最早到期的摘除时间，到期后需要重新过滤
+        private final long expiresAt;
+        private final List<Endpoint> excluded;
+        private final ServiceSnapshot snapshot;
+
+        private FilteredView(long sourceVersion, long epoch, long expiresAt, List<Endpoint> excluded, ServiceSnapshot snapshot) {
+            this.sourceVersion = sourceVersion;
+            this.epoch = epoch;
+            this.expiresAt = expiresAt;
+            this.excluded = excluded;
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.kama.client.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @ClassName ChannelPool
+ * @Description 单个服务地址的连接池，多个在途请求复用同一条长连接
+ * 连接建立失败，或连接在收到任何响应之前就被关闭（如服务端连接数已满时重置连接），该槽位按指数退避重连，避免重连风暴
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 19:00
+ * @Version v5.0
+ */
+@Slf4j
+public class ChannelPool {
+    private final InetSocketAddress address;
+    private final Bootstrap bootstrap;
+    private final int maxInFlight;
+    //每个槽位保存一条连接（可能仍在建立中）
+    private final AtomicReferenceArray<CompletableFuture<PooledChannel>> slots;
+    //轮询下标
+    private final AtomicInteger next = new AtomicInteger(0);
+    //重连的初始退避时间与上限（毫秒）
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    //每个槽位连续失败的次数，以及退避结束、允许重连的时间
+    private final AtomicIntegerArray failures;
+    private final AtomicLongArray retryAt;
+
+    public ChannelPool(InetSocketAddress address, Bootstrap bootstrap, int poolSize, int maxInFlight,
+                       long backoffMillis, long maxBackoffMillis) {
+        this.address = address;
+        this.bootstrap = bootstrap;
+        this.maxInFlight = maxInFlight;
+        this.slots = new AtomicReferenceArray<>(Math.max(1, poolSize));
+        this.backoffMillis = Math.max(backoffMillis, 1L);
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, this.backoffMillis);
+        this.failures = new AtomicIntegerArray(slots.length());
+        this.retryAt = new AtomicLongArray(slots.length());
+    }
+
+    /**
+     * 获取一条可用连接并占用一个在途名额
+     * 优先使用已建立且未满的连接，断开的槽位会异步重连
+     */
+    public CompletableFuture<PooledChannel> acquire() {
+        int size = slots.length();
+        int start = next.getAndIncrement();
+        CompletableFuture<PooledChannel> connecting = null;
+        CompletableFuture<PooledChannel> failed = null;
+        boolean backingOff = false;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            int index = Math.floorMod(start + i, size);
+            CompletableFuture<PooledChannel> slot = slots.get(index);
+            if (slot == null || isBroken(slot)) {
+                if (now < retryAt.get(index)) {
+                    // 退避期内不重连
+                    backingOff = true;
+                    continue;
+                }
+                slot = connect(index, slot);
+            }
+            if (!slot.isDone()) {
+                if (connecting == null) {
+                    connecting = slot;
+                }
+            } else if (slot.isCompletedExceptionally()) {
+                failed = slot;
+            } else {
+                PooledChannel pooledChannel = slot.getNow(null);
+                if (pooledChannel.tryAcquire()) {
+                    return CompletableFuture.completedFuture(pooledChannel);
+                }
+            }
+        }
+        if (connecting == null && failed != null) {
+            // 连接全部建立失败，把失败原因返回给调用方
+            return failed;
+        }
+        if (connecting == null && backingOff) {
+            CompletableFuture<PooledChannel> refused = new CompletableFuture<>();
+            refused.completeExceptionally(new IllegalStateException("连接失败或被服务端拒绝，退避后重连，地址: " + address));
+            return refused;
+        }
+        if (connecting == null) {
+            CompletableFuture<PooledChannel> exhausted = new CompletableFuture<>();
+            exhausted.completeExceptionally(new IllegalStateException("连接池已满，地址: " + address));
+            return exhausted;
+        }
+        // 所有已建立的连接都已满，等待正在建立的连接
+        return connecting.thenApply(pooledChannel -> {
+            if (!pooledChannel.tryAcquire()) {
+                throw new IllegalStateException("连接池已满，地址: " + address);
+            }
+            return pooledChannel;
+        });
+    }
+
+    //关闭池中所有连接
+    public void close() {
+        for (int i = 0; i < slots.length(); i++) {
+            CompletableFuture<PooledChannel> slot = slots.getAndSet(i, null);
+            if (slot != null) {
+                slot.thenAccept(pooledChannel -> pooledChannel.getChannel().close());
+            }
+        }
+    }
+
+    private CompletableFuture<PooledChannel> connect(int index, CompletableFuture<PooledChannel> expected) {
+        CompletableFuture<PooledChannel> created = new CompletableFuture<>();
+        if (!slots.compareAndSet(index, expected, created)) {
+            // 其它线程已经在重连这个槽位
+            CompletableFuture<PooledChannel> current = slots.get(index);
+            return current != null ? current : connect(index, null);
+        }
+        bootstrap.connect(address).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.info("与 {} 建立长连接成功，槽位: {}", address, index);
+                PooledChannel pooledChannel = new PooledChannel(future.channel(), maxInFlight);
+                future.channel().closeFuture().addListener(closed -> onClosed(index, pooledChannel));
+                created.complete(pooledChannel);
+            } else {
+                log.error("与 {} 建立连接失败", address, future.cause());
+                backoff(index);
+                created.completeExceptionally(future.cause());
+            }
+        });
+        return created;
+    }
+
+    //连接关闭：用过的连接可以立即重连，没收到过响应的连接视为被拒绝
+    private void onClosed(int index, PooledChannel pooledChannel) {
+        if (pooledChannel.hasResponded()) {
+            failures.set(index, 0);
+            retryAt.set(index, 0L);
+        } else {
+            backoff(index);
+        }
+    }
+
+    //连续失败时退避时间翻倍，不超过上限
+    private void backoff(int index) {
+        int shift = Math.min(failures.getAndIncrement(index), 16);
+        long delay = Math.min(backoffMillis << shift, maxBackoffMillis);
+        retryAt.set(index, System.currentTimeMillis() + delay);
+        log.warn("与 {} 的连接失败或被拒绝，槽位 {} 在 {}ms 后重连", address, index, delay);
+    }
+
+    private boolean isBroken(CompletableFuture<PooledChannel> slot) {
+        if (!slot.isDone()) {
+            return false;
+        }
+        if (slot.isCompletedExceptionally()) {
+            return true;
+        }
+        return !slot.getNow(null).isActive();
+    }
+}
@@ -0,0 +1,67 @@
+package com.kama.client.pool;
+
+import io.netty.channel.Channel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName PooledChannel
+ * @Description 连接池中的长连接，记录连接上的在途请求数
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 19:00
+ * @Version v5.0
+ */
+public class PooledChannel {
+    private final Channel channel;
+    //单个连接允许的最大在途请求数
+    private final int maxInFlight;
+    //当前在途请求数
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    //是否收到过响应，连接池据此区分正常断开与被服务端拒绝
+    private volatile boolean responded;
+
+    public PooledChannel(Channel channel, int maxInFlight) {
+        this.channel = channel;
+        this.maxInFlight = maxInFlight;
+    }
+
+    //占用一个在途名额，连接已满时返回false
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    //请求结束后归还名额
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    //收到响应时调用
+    public void markResponded() {
+        if (!responded) {
+            responded = true;
+        }
+    }
+
+    public boolean hasResponded() {
+        return responded;
+    }
+
+    public boolean isActive() {
+        return channel.isActive();
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -1,7 +1,13 @@
 package com.kama.client.proxy;
 
+import com.kama.KRpcApplication;
+import com.kama.annotation.HashKey;
+import com.kama.annotation.Timeout;
+import com.kama.client.cache.Endpoint;
 import com.kama.client.circuitbreaker.CircuitBreaker;
 import com.kama.client.circuitbreaker.CircuitBreakerProvider;
+import com.kama.client.circuitbreaker.MethodCircuitBreakers;
+import com.kama.client.outlier.OutlierDetector;
 import com.kama.client.retry.GuavaRetry;
 import com.kama.client.rpcclient.RpcClient;
 import com.kama.client.rpcclient.impl.NettyRpcClient;
@@ -13,16 +19,21 @@ import common.message.RpcRequest;
 import common.message.RpcResponse;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @ClassName ClientProxy
  * @Description 动态代理
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:14
+ * @LastChangeDate 2024-12-18 17:30
  * @Version v5.0
  */
 @Slf4j
@@ -32,13 +43,20 @@ public class ClientProxy implements InvocationHandler {
     private RpcClient rpcClient;
     private ServiceCenter serviceCenter;
     private CircuitBreakerProvider circuitBreakerProvider;
+    //缓存每个方法的超时时间，避免每次调用都反射读取注解
+    private final Map<Method, Long> timeoutCache = new ConcurrentHashMap<>();
+    //缓存每个方法中@HashKey参数的下标，没有时为-1
+    private final Map<Method, Integer> hashKeyIndexCache = new ConcurrentHashMap<>();
 
     public ClientProxy() throws InterruptedException {
         serviceCenter = new ZKServiceCenter();
-        circuitBreakerProvider = new CircuitBreakerProvider();
+        circuitBreakerProvider = new CircuitBreakerProvider(KRpcApplication.getRpcConfig());
+        //服务地址下线时清除其熔断器
+        serviceCenter.addSnapshotListener(circuitBreakerProvider::onSnapshotChanged);
     }
 
     //jdk动态代理，每一次代理对象调用方法，都会经过此方法增强（反射获取request对象，socket发送到服务端）
+    //返回值为CompletableFuture的方法走异步调用，调用线程不会被阻塞
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         //构建request
@@ -46,47 +64,146 @@ public class ClientProxy implements InvocationHandler {
                 .interfaceName(method.getDeclaringClass().getName())
                 .methodName(method.getName())
                 .params(args).paramsType(method.getParameterTypes()).build();
-        //获取熔断器
-        CircuitBreaker circuitBreaker = circuitBreakerProvider.getCircuitBreaker(method.getName());
-        //判断熔断器是否允许请求经过
-        if (!circuitBreaker.allowRequest()) {
-            log.warn("熔断器开启，请求被拒绝: {}", request);
-            //这里可以针对熔断做特殊处理，返回特殊值
-            return null;
+        boolean async = CompletableFuture.class.isAssignableFrom(method.getReturnType());
+        //获取该方法的熔断器，方法签名在其中预先算好
+        MethodCircuitBreakers circuitBreakers = circuitBreakerProvider.getCircuitBreakers(method);
+        String methodSignature = circuitBreakers.getSignature();
+        Object hashKey = getHashKey(method, args);
+        Endpoint endpoint = serviceCenter.serviceDiscovery(request, hashKey);
+        if (endpoint == null) {
+            //没有可用地址，直接拒绝，不经过熔断器
+            log.error("服务发现失败，没有可用的服务地址: {}", request.getInterfaceName());
+            return async ? CompletableFuture.completedFuture(null) : null;
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        //判断该地址上此方法的熔断器是否允许请求经过，结果用放行时的许可上报
+        Object permission = circuitBreaker.acquirePermission();
+        if (permission == null) {
+            //排除熔断中的地址后重新选择一次
+            Endpoint rejected = endpoint;
+            endpoint = serviceCenter.serviceDiscovery(request, hashKey,
+                    candidate -> candidate == rejected || circuitBreakers.isRejecting(candidate));
+            circuitBreaker = endpoint != null ? circuitBreakers.get(endpoint) : null;
+            permission = circuitBreaker != null ? circuitBreaker.acquirePermission() : null;
+            if (permission == null) {
+                log.warn("熔断器开启，请求被拒绝: {}", request);
+                //这里可以针对熔断做特殊处理，返回特殊值
+                return async ? CompletableFuture.completedFuture(null) : null;
+            }
         }
-        //数据传输
-        RpcResponse response;
         //后续添加逻辑：为保持幂等性，只对白名单上的服务进行重试
         // 如果启用重试机制，先检查是否需要重试
-        String methodSignature = getMethodSignature(request.getInterfaceName(), method);
         log.info("方法签名: " + methodSignature);
-        InetSocketAddress serviceAddress = serviceCenter.serviceDiscovery(request);
-        rpcClient = new NettyRpcClient(serviceAddress);
-        if (serviceCenter.checkRetry(serviceAddress, methodSignature)) {
-            //调用retry框架进行重试操作
-            try {
-                log.info("尝试重试调用服务: {}", methodSignature);
-                response = new GuavaRetry().sendServiceWithRetry(request, rpcClient);
-            } catch (Exception e) {
-                log.error("重试调用失败: {}", methodSignature, e);
-                circuitBreaker.recordFailure();
-                throw e;  // 将异常抛给调用者
+        long timeoutMillis = getTimeout(method);
+        RpcClient client = new NettyRpcClient(endpoint, timeoutMillis);
+        rpcClient = client;
+        boolean retryable = serviceCenter.checkRetry(endpoint, methodSignature);
+        if (async) {
+            return invokeAsync(request, client, retryable, circuitBreaker, permission, endpoint, timeoutMillis);
+        }
+        //数据传输
+        RpcResponse response = null;
+        //在途请求计数与延迟采样，供负载均衡使用
+        long start = beginRequest(endpoint);
+        try {
+            if (retryable) {
+                //调用retry框架进行重试操作
+                try {
+                    log.info("尝试重试调用服务: {}", methodSignature);
+                    response = new GuavaRetry().sendServiceWithRetry(request, client);
+                } catch (Exception e) {
+                    log.error("重试调用失败: {}", methodSignature, e);
+                    circuitBreaker.recordFailure(permission, System.nanoTime() - start);
+                    throw e;  // 将异常抛给调用者
+                }
+            } else {
+                //只调用一次
+                response = client.sendRequest(request);
+            }
+        } finally {
+            endRequest(request, endpoint, start, timeoutMillis, response);
+        }
+        recordResponse(circuitBreaker, permission, request, response, System.nanoTime() - start);
+        return response != null ? response.getData() : null;
+    }
+
+    //异步调用：重试、熔断上报都串在future上，等待期间不占用调用线程
+    private CompletableFuture<Object> invokeAsync(RpcRequest request, RpcClient client, boolean retryable,
+                                                  CircuitBreaker circuitBreaker, Object permission, Endpoint endpoint,
+                                                  long timeoutMillis) {
+        long start = beginRequest(endpoint);
+        CompletableFuture<RpcResponse> responseFuture;
+        try {
+            responseFuture = retryable
+                    ? new GuavaRetry().sendServiceWithRetryAsync(request, client)
+                    : client.sendRequestAsync(request);
+        } catch (RuntimeException e) {
+            endRequest(request, endpoint, start, timeoutMillis, null);
+            circuitBreaker.recordFailure(permission, System.nanoTime() - start);
+            throw e;
+        }
+        //请求完成（含超时）时减少在途计数、记录延迟并上报结果
+        responseFuture.whenComplete((response, e) -> endRequest(request, endpoint, start, timeoutMillis, response));
+        return responseFuture.handle((response, e) -> {
+            long duration = System.nanoTime() - start;
+            if (e != null) {
+                //异常完成也要上报，否则半开启状态下的探测许可不会归还
+                circuitBreaker.recordFailure(permission, duration);
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
             }
+            recordResponse(circuitBreaker, permission, request, response, duration);
+            return response != null ? response.getData() : null;
+        });
+    }
+
+    //返回请求开始的时间
+    private long beginRequest(Endpoint endpoint) {
+        endpoint.getStats().beginRequest();
+        return System.nanoTime();
+    }
+
+    //减少在途计数、记录延迟并上报结果；只有实例故障按超时时间计入延迟，见 OutlierDetector.endRequest
+    private void endRequest(RpcRequest request, Endpoint endpoint, long start, long timeoutMillis, RpcResponse response) {
+        serviceCenter.endRequest(request, endpoint, response, System.nanoTime() - start, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    //记录response的状态及调用耗时，上报给熔断器
+    private void recordResponse(CircuitBreaker circuitBreaker, Object permission, RpcRequest request,
+                                RpcResponse response, long durationNanos) {
+        //与异常实例检测同一规则：只有没有响应、超时与服务端5xx错误计为失败；
+        //业务异常与限流拒绝说明实例仍在正常应答，计为成功（半开启状态下的探测许可也随之归还）
+        if (OutlierDetector.isEndpointFailure(response)) {
+            circuitBreaker.recordFailure(permission, durationNanos);
         } else {
-            //只调用一次
-            response = rpcClient.sendRequest(request);
+            circuitBreaker.recordSuccess(permission, durationNanos);
         }
-        //记录response的状态，上报给熔断器
         if (response != null) {
-            if (response.getCode() == 200) {
-                circuitBreaker.recordSuccess();
-            } else if (response.getCode() == 500) {
-                circuitBreaker.recordFailure();
-            }
             log.info("收到响应: {} 状态码: {}", request.getInterfaceName(), response.getCode());
         }
+    }
 
-        return response != null ? response.getData() : null;
+    //方法上的@Timeout优先，否则使用配置中的默认超时
+    private long getTimeout(Method method) {
+        return timeoutCache.computeIfAbsent(method, m -> {
+            Timeout timeout = m.getAnnotation(Timeout.class);
+            return timeout != null ? timeout.value() : KRpcApplication.getRpcConfig().getTimeout();
+        });
+    }
+
+    //取@HashKey标记的参数值作为一致性哈希的键，没有标记时返回null
+    private Object getHashKey(Method method, Object[] args) {
+        int index = hashKeyIndexCache.computeIfAbsent(method, m -> {
+            Annotation[][] annotations = m.getParameterAnnotations();
+            for (int i = 0; i < annotations.length; i++) {
+                for (Annotation annotation : annotations[i]) {
+                    if (annotation instanceof HashKey) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        });
+        return index >= 0 && args != null ? args[index] : null;
     }
 
     public <T> T getProxy(Class<T> clazz) {
@@ -94,22 +211,6 @@ public class ClientProxy implements InvocationHandler {
         return (T) o;
     }
 
-    // 根据接口名字和方法获取方法签名
-    private String getMethodSignature(String interfaceName, Method method) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(interfaceName).append("#").append(method.getName()).append("(");
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            sb.append(parameterTypes[i].getName());
-            if (i < parameterTypes.length - 1) {
-                sb.append(",");
-            } else{
-                sb.append(")");
-            }
-        }
-        return sb.toString();
-    }
-
     //关闭创建的资源
     //注：如果在需要C-S保持长连接的场景下无需调用close方法
     public void close(){
@@ -9,28 +9,33 @@ import lombok.extern.slf4j.Slf4j;
 
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @ClassName guavaRetry
  * @Description 重试策略
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:44
+ * @LastChangeDate 2024-12-10 10:30
  * @Version v5.0
  */
 @Slf4j
 public class GuavaRetry {
+    //重试等待时间（秒）
+    private static final long WAIT_SECONDS = 2;
+    //最大尝试次数
+    private static final int MAX_ATTEMPTS = 3;
 
     public RpcResponse sendServiceWithRetry(RpcRequest request, RpcClient rpcClient) {
         Retryer<RpcResponse> retryer = RetryerBuilder.<RpcResponse>newBuilder()
                 //无论出现什么异常，都进行重试
                 .retryIfException()
-                //返回结果为 error时进行重试
-                .retryIfResult(response -> Objects.equals(response.getCode(), 500))
+                //返回结果为 error 或超时时进行重试
+                .retryIfResult(response -> Objects.equals(response.getCode(), 500) || Objects.equals(response.getCode(), 504))
                 //重试等待策略：等待 2s 后再进行重试
-                .withWaitStrategy(WaitStrategies.fixedWait(2, TimeUnit.SECONDS))
+                .withWaitStrategy(WaitStrategies.fixedWait(WAIT_SECONDS, TimeUnit.SECONDS))
                 //重试停止策略：重试达到 3 次
-                .withStopStrategy(StopStrategies.stopAfterAttempt(3))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(MAX_ATTEMPTS))
                 .withRetryListener(new RetryListener() {
                     @Override
                     public <V> void onRetry(Attempt<V> attempt) {
@@ -45,4 +50,31 @@ public class GuavaRetry {
         }
         return RpcResponse.fail("重试失败，所有重试尝试已结束");
     }
+
+    /**
+     * 异步重试：与同步重试策略一致，但等待期间不占用调用线程
+     * 每次重试通过延迟执行器在 WAIT_SECONDS 后发起
+     */
+    public CompletableFuture<RpcResponse> sendServiceWithRetryAsync(RpcRequest request, RpcClient rpcClient) {
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        attemptAsync(request, rpcClient, 1, result);
+        return result;
+    }
+
+    private void attemptAsync(RpcRequest request, RpcClient rpcClient, int attemptNumber, CompletableFuture<RpcResponse> result) {
+        rpcClient.sendRequestAsync(request).whenComplete((response, e) -> {
+            if (e == null && response != null && response.getCode() != 500 && response.getCode() != 504) {
+                result.complete(response);
+                return;
+            }
+            if (attemptNumber >= MAX_ATTEMPTS) {
+                log.error("重试失败: 请求 {} 执行时遇到异常", request.getMethodName(), e);
+                result.complete(RpcResponse.fail("重试失败，所有重试尝试已结束"));
+                return;
+            }
+            log.info("重试第 {} 次", attemptNumber);
+            CompletableFuture.delayedExecutor(WAIT_SECONDS, TimeUnit.SECONDS)
+                    .execute(() -> attemptAsync(request, rpcClient, attemptNumber + 1, result));
+        });
+    }
 }
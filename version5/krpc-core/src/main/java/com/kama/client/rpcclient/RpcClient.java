@@ -4,6 +4,8 @@ package com.kama.client.rpcclient;
 import common.message.RpcRequest;
 import common.message.RpcResponse;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @InterfaceName RpcClient
  * @Description 定义底层通信方法
@@ -14,5 +16,11 @@ import common.message.RpcResponse;
 
 public interface RpcClient {
     RpcResponse sendRequest(RpcRequest request);
+
+    //异步发送请求，默认退化为在调用线程上同步发送
+    default CompletableFuture<RpcResponse> sendRequestAsync(RpcRequest request) {
+        return CompletableFuture.completedFuture(sendRequest(request));
+    }
+
     void close();
 }
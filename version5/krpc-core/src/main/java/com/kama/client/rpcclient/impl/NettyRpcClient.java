@@ -1,28 +1,37 @@
 package com.kama.client.rpcclient.impl;
 
+import com.kama.KRpcApplication;
+import com.kama.client.cache.Endpoint;
 import com.kama.client.netty.NettyClientInitializer;
+import com.kama.client.netty.PendingRequests;
+import com.kama.client.pool.ChannelPool;
+import com.kama.client.pool.PooledChannel;
 import com.kama.client.rpcclient.RpcClient;
-import com.kama.client.servicecenter.ServiceCenter;
+import com.kama.config.KRpcConfig;
+import com.kama.transport.NettyTransport;
 
 import common.message.RpcRequest;
 import common.message.RpcResponse;
+import common.serializer.mycoder.ProtocolHeader;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 
 
 import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @ClassName NettyRpcClient
  * @Description Netty客户端
  * @Author Tong
- * @LastChangeDate 2024-12-02 11:03
+ * @LastChangeDate 2024-12-17 19:00
  * @Version v5.0
  */
 @Slf4j
@@ -30,65 +39,114 @@ public class NettyRpcClient implements RpcClient {
 
     private static final Bootstrap bootstrap;
     private static final EventLoopGroup eventLoopGroup;
+    //所有连接共享的在途请求表
+    private static final PendingRequests pendingRequests;
+    //key: 服务地址，value: 该地址的连接池
+    private static final Map<Endpoint, ChannelPool> channelPools = new ConcurrentHashMap<>();
+    //请求ID生成器
+    private static final AtomicLong requestIdGenerator = new AtomicLong(0);
 
-    private final InetSocketAddress address;
+    //建立连接的超时时间（毫秒）
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    //已解析的服务地址
+    private final Endpoint address;
+    //本次调用的超时时间（毫秒）
+    private final long timeoutMillis;
 
     public NettyRpcClient(InetSocketAddress serviceAddress) {
-        this.address = serviceAddress;
+        this(serviceAddress, KRpcApplication.getRpcConfig().getTimeout());
+    }
+
+    public NettyRpcClient(InetSocketAddress serviceAddress, long timeoutMillis) {
+        this(serviceAddress != null ? Endpoint.of(serviceAddress) : null, timeoutMillis);
     }
 
-    //netty客户端初始化
+    public NettyRpcClient(Endpoint endpoint, long timeoutMillis) {
+        this.address = endpoint;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    //netty客户端初始化，传输实现（nio/epoll/io_uring）由配置决定
     static {
-        eventLoopGroup = new NioEventLoopGroup();
+        NettyTransport transport = NettyTransport.create(KRpcApplication.getRpcConfig());
+        eventLoopGroup = transport.newEventLoopGroup(0);
+        pendingRequests = new PendingRequests();
         bootstrap = new Bootstrap();
-        bootstrap.group(eventLoopGroup).channel(NioSocketChannel.class)
-                .handler(new NettyClientInitializer());
+        bootstrap.group(eventLoopGroup)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .handler(new NettyClientInitializer(pendingRequests));
+        transport.configure(bootstrap);
     }
 
     @Override
     public RpcResponse sendRequest(RpcRequest request) {
+        try {
+            // 同步调用即在异步结果上阻塞等待
+            return sendRequestAsync(request).get();
+        } catch (InterruptedException e) {
+            log.error("请求被中断，发送请求失败: {}", e.getMessage(), e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("发送请求时发生异常: {}", e.getCause().getMessage(), e.getCause());
+        }
+        return RpcResponse.fail("请求失败");
+    }
+
+    /**
+     * 异步发送请求，不阻塞调用线程，超时后future以504响应结束
+     * 注意：返回的future在Netty IO线程上完成，后续回调中不要执行阻塞操作
+     */
+    @Override
+    public CompletableFuture<RpcResponse> sendRequestAsync(RpcRequest request) {
         //从注册中心获取host,post
         if (address == null) {
             log.error("服务发现失败，返回的地址为 null");
-            return RpcResponse.fail("服务发现失败，地址为 null");
+            return CompletableFuture.completedFuture(RpcResponse.fail("服务发现失败，地址为 null"));
         }
-        String host = address.getHostName();
-        int port = address.getPort();
-        try {
-            // 连接到远程服务
-            ChannelFuture channelFuture = bootstrap.connect(host, port).sync();
-            Channel channel = channelFuture.channel();
-            // 发送数据
-            channel.writeAndFlush(request);
-            //sync()堵塞获取结果
-            channel.closeFuture().sync();
-            // 阻塞的获得结果，通过给channel设计别名，获取特定名字下的channel中的内容（这个在hanlder中设置）
-            // AttributeKey是，线程隔离的，不会由线程安全问题。
-            // 当前场景下选择堵塞获取结果
-            // 其它场景也可以选择添加监听器的方式来异步获取结果 channelFuture.addListener...
-            AttributeKey<RpcResponse> key = AttributeKey.valueOf("RPCResponse");
-            RpcResponse response = channel.attr(key).get();
-            if (response == null) {
-                log.error("服务响应为空，可能是请求失败或超时");
-                return RpcResponse.fail("服务响应为空");
+        // 从连接池取一条长连接，多个请求共享同一连接
+        return getChannelPool().acquire().thenCompose(pooledChannel -> {
+            request.setRequestId(requestIdGenerator.incrementAndGet());
+            CompletableFuture<RpcResponse> responseFuture = pendingRequests.put(request.getRequestId(), pooledChannel, timeoutMillis);
+            // 发送数据，写失败时立即结束该请求
+            pooledChannel.getChannel().writeAndFlush(request).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    pendingRequests.fail(request.getRequestId(), future.cause());
+                }
+            });
+            // handler按请求ID回填响应
+            return responseFuture;
+        }).handle((response, e) -> {
+            if (e != null) {
+                log.error("发送请求时发生异常: {}", e.getMessage(), e);
+                return RpcResponse.fail("请求失败");
             }
-
             log.info("收到响应: {}", response);
             return response;
-        } catch (InterruptedException e) {
-            log.error("请求被中断，发送请求失败: {}", e.getMessage(), e);
-            Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            log.error("发送请求时发生异常: {}", e.getMessage(), e);
-        } finally {
-            //
+        });
+    }
+
+    private ChannelPool getChannelPool() {
+        ChannelPool channelPool = channelPools.get(address);
+        if (channelPool != null) {
+            return channelPool;
         }
-        return RpcResponse.fail("请求失败");
+        return channelPools.computeIfAbsent(address, key -> {
+            KRpcConfig config = KRpcApplication.getRpcConfig();
+            //v1帧头没有请求ID，响应按顺序匹配，每条连接同时只发一个请求
+            int maxInFlight = config.getProtocolVersion() == ProtocolHeader.VERSION_1 ? 1 : config.getMaxInFlightPerConnection();
+            return new ChannelPool(key.getSocketAddress(), bootstrap, config.getMaxConnectionsPerAddress(), maxInFlight,
+                    config.getReconnectBackoffMillis(), config.getMaxReconnectBackoffMillis());
+        });
     }
 
     // 优雅关闭 Netty 资源
     public void close() {
         try {
+            channelPools.values().forEach(ChannelPool::close);
+            channelPools.clear();
+            pendingRequests.close();
             if (eventLoopGroup != null) {
                 eventLoopGroup.shutdownGracefully().sync();
             }
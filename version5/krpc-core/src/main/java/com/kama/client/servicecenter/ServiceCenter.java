@@ -1,24 +1,48 @@
 package com.kama.client.servicecenter;
 
 
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
 import common.message.RpcRequest;
+import common.message.RpcResponse;
 
-import java.net.InetSocketAddress;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * @InterfaceName ServiceCenter
  * @Description 服务中心接口
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:31
+ * @LastChangeDate 2024-12-18 16:30
  * @Version v5.0
  */
 
 public interface ServiceCenter {
     //  查询：根据服务名查找地址
-    InetSocketAddress serviceDiscovery(RpcRequest request);
+    Endpoint serviceDiscovery(RpcRequest request);
+
+    //  查询：根据服务名和哈希键查找地址，哈希键相同的请求落到同一个地址
+    default Endpoint serviceDiscovery(RpcRequest request, Object hashKey) {
+        return serviceDiscovery(request);
+    }
+
+    //  查询：跳过被排除的地址（如该地址上此方法的熔断器已开启）重新选择，没有可用地址时返回null
+    default Endpoint serviceDiscovery(RpcRequest request, Object hashKey, Predicate<Endpoint> excluded) {
+        Endpoint endpoint = serviceDiscovery(request, hashKey);
+        return endpoint != null && excluded.test(endpoint) ? null : endpoint;
+    }
+
+    //添加地址快照变化的监听器，服务的地址变化时在监听线程中通知
+    default void addSnapshotListener(Consumer<ServiceSnapshot> listener) {
+    }
+
+    //一次调用结束（response 为 null 表示没有响应）：记录在途计数与延迟，并上报调用结果供异常实例检测使用
+    default void endRequest(RpcRequest request, Endpoint endpoint, RpcResponse response, long rttNanos, long timeoutNanos) {
+        endpoint.getStats().endRequest(rttNanos);
+    }
 
     //判断是否可重试
-    boolean checkRetry(InetSocketAddress serviceAddress, String methodSignature);
+    boolean checkRetry(Endpoint endpoint, String methodSignature);
 
     //关闭客户端
     void close();
@@ -1,26 +1,36 @@
 package com.kama.client.servicecenter;
 
+import com.kama.KRpcApplication;
+import com.kama.client.cache.Endpoint;
 import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.outlier.OutlierDetector;
 import com.kama.client.servicecenter.ZKWatcher.watchZK;
 import com.kama.client.servicecenter.balance.LoadBalance;
-import com.kama.client.servicecenter.balance.impl.ConsistencyHashBalance;
+import com.kama.client.servicecenter.balance.LoadBalanceFactory;
+import common.message.ProviderMetadata;
 import common.message.RpcRequest;
+import common.message.RpcResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.KeeperException;
 
-import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * @ClassName ZKServiceCenter
  * @Description 从服务中心获取服务地址
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:33
+ * @LastChangeDate 2024-12-18 16:30
  * @Version v5.0
  */
 @Slf4j
@@ -33,7 +43,9 @@ public class ZKServiceCenter implements ServiceCenter {
     //serviceCache
     private ServiceCache cache;
 
-    private final LoadBalance loadBalance = new ConsistencyHashBalance();
+    private final LoadBalance loadBalance;
+    //异常实例检测，负载均衡只在未被摘除的地址中选择
+    private final OutlierDetector outlierDetector;
 
     //负责zookeeper客户端的初始化，并与zookeeper服务端进行连接
     public ZKServiceCenter() throws InterruptedException {
@@ -47,8 +59,12 @@ public class ZKServiceCenter implements ServiceCenter {
                 .sessionTimeoutMs(40000).retryPolicy(policy).namespace(ROOT_PATH).build();
         this.client.start();
         log.info("Zookeeper 连接成功");
+        //按配置初始化负载均衡，地址快照变化时由监听线程通知（如一致性哈希重建哈希环）
+        loadBalance = LoadBalanceFactory.create(KRpcApplication.getRpcConfig());
         //初始化本地缓存
         cache = new ServiceCache();
+        cache.setListener(loadBalance::onSnapshotChanged);
+        outlierDetector = new OutlierDetector(cache, KRpcApplication.getRpcConfig());
         //加入zookeeper事件监听器
         watchZK watcher = new watchZK(client, cache);
         //监听启动
@@ -57,45 +73,77 @@ public class ZKServiceCenter implements ServiceCenter {
 
     //根据服务名（接口名）返回地址
     @Override
-    public InetSocketAddress serviceDiscovery(RpcRequest request) {
+    public Endpoint serviceDiscovery(RpcRequest request) {
+        return serviceDiscovery(request, null);
+    }
+
+    //根据服务名（接口名）和哈希键返回地址
+    @Override
+    public Endpoint serviceDiscovery(RpcRequest request, Object hashKey) {
+        return serviceDiscovery(request, hashKey, null);
+    }
+
+    //根据服务名（接口名）和哈希键返回地址，跳过被排除的地址
+    @Override
+    public Endpoint serviceDiscovery(RpcRequest request, Object hashKey, Predicate<Endpoint> excluded) {
         String serviceName = request.getInterfaceName();
         try {
-            //先从本地缓存中找
-            List<String> addressList = cache.getServiceListFromCache(serviceName);
+            //先从本地缓存中找，取到的是不可变快照，监听线程随后的修改不影响本次选择
+            ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
             //如果找不到，再去zookeeper中找
-            //这种i情况基本不会发生，或者说只会出现在初始化阶段
-            if (addressList == null) {
-                addressList = client.getChildren().forPath("/" + serviceName);
-                // 如果本地缓存中没有该服务名的地址列表，则添加
-                List<String> cachedAddresses = cache.getServiceListFromCache(serviceName);
-                if (cachedAddresses == null || cachedAddresses.isEmpty()) {
-                    // 假设 addServiceToCache 方法可以处理单个地址
-                    for (String address : addressList) {
-                        cache.addServiceToCache(serviceName, address);
-                    }
+            //这种情况基本不会发生，或者说只会出现在初始化阶段（监听尚未同步完）
+            if (snapshot.isEmpty() && client.checkExists().forPath("/" + serviceName) != null) {
+                List<String> addressList = client.getChildren().forPath("/" + serviceName);
+                if (!addressList.isEmpty()) {
+                    cache.putServiceList(serviceName, readProviders(serviceName, addressList));
                 }
+                snapshot = cache.getSnapshot(serviceName);
             }
-            if (addressList.isEmpty()) {
+            if (snapshot.isEmpty()) {
                 log.warn("未找到服务：{}", serviceName);
                 return null;
             }
-            // 负载均衡得到地址
-            String address = loadBalance.balance(addressList);
-            return parseAddress(address);
+            // 排除摘除期内的地址后负载均衡得到地址，地址已在加入缓存时解析好
+            return loadBalance.select(outlierDetector.filter(snapshot), hashKey, excluded);
         } catch (Exception e) {
             log.error("服务发现失败，服务名：{}", serviceName, e);
         }
         return null;
     }
+
+    //连同节点上的元数据一起读取，与监听线程写入缓存的内容一致
+    private Map<String, ProviderMetadata> readProviders(String serviceName, List<String> addressList) throws Exception {
+        Map<String, ProviderMetadata> providers = new LinkedHashMap<>();
+        for (String address : addressList) {
+            try {
+                providers.put(address, ProviderMetadata.parse(client.getData().forPath("/" + serviceName + "/" + address)));
+            } catch (KeeperException.NoNodeException e) {
+                //列出之后提供者已下线
+                log.debug("服务{}的地址{}已下线", serviceName, address);
+            }
+        }
+        return providers;
+    }
+
+    @Override
+    public void addSnapshotListener(Consumer<ServiceSnapshot> listener) {
+        cache.addListener(listener);
+    }
+
+    @Override
+    public void endRequest(RpcRequest request, Endpoint endpoint, RpcResponse response, long rttNanos, long timeoutNanos) {
+        outlierDetector.endRequest(request.getInterfaceName(), endpoint, response, rttNanos, timeoutNanos);
+    }
+
     //保证线程安全使用CopyOnWriteArraySet
     private Set<String> retryServiceCache = new CopyOnWriteArraySet<>();
     //写一个白名单缓存，优化性能
     @Override
-    public boolean checkRetry(InetSocketAddress serviceAddress, String methodSignature) {
+    public boolean checkRetry(Endpoint endpoint, String methodSignature) {
         if (retryServiceCache.isEmpty()) {
             try {
                 CuratorFramework rootClient = client.usingNamespace(RETRY);
-                List<String> retryableMethods = rootClient.getChildren().forPath("/" + getServiceAddress(serviceAddress));
+                List<String> retryableMethods = rootClient.getChildren().forPath("/" + endpoint.getAddress());
                 retryServiceCache.addAll(retryableMethods);
             } catch (Exception e) {
                 log.error("检查重试失败，方法签名：{}", methodSignature, e);
@@ -106,17 +154,7 @@ public class ZKServiceCenter implements ServiceCenter {
 
     @Override
     public void close() {
+        outlierDetector.close();
         client.close();
     }
-
-    // 将InetSocketAddress解析为格式为ip:port的字符串
-    private String getServiceAddress(InetSocketAddress serverAddress){
-        return serverAddress.getHostName() + ":" + serverAddress.getPort();
-    }
-
-    // 字符串解析为地址
-    private InetSocketAddress parseAddress(String address) {
-        String[] result = address.split(":");
-        return new InetSocketAddress(result[0], Integer.parseInt(result[1]));
-    }
 }
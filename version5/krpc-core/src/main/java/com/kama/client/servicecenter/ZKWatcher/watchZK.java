@@ -1,6 +1,7 @@
 package com.kama.client.servicecenter.ZKWatcher;
 
 import com.kama.client.cache.ServiceCache;
+import common.message.ProviderMetadata;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.ChildData;
@@ -11,8 +12,9 @@ import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 /**
  * @ClassName watchZK
  * @Description 节点监听
+ * 地址节点的数据为提供者发布的元数据（如权重），节点创建和数据变化时解析后写入本地缓存
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:37
+ * @LastChangeDate 2024-12-15 22:00
  * @Version v5.0
  */
 @Slf4j
@@ -51,9 +53,10 @@ public class watchZK {
                         else {
                             String serviceName = pathList[1];
                             String address = pathList[2];
-                            //将新注册的服务加入到本地缓存中
-                            cache.addServiceToCache(serviceName, address);
-                            log.info("节点创建：服务名称 {} 地址 {}", serviceName, address);
+                            //将新注册的服务连同其元数据加入到本地缓存中
+                            ProviderMetadata metadata = ProviderMetadata.parse(childData1.getData());
+                            cache.addServiceToCache(serviceName, address, metadata);
+                            log.info("节点创建：服务名称 {} 地址 {} 元数据 {}", serviceName, address, metadata);
                         }
                         break;
                     case "NODE_CHANGED": // 节点更新
@@ -64,8 +67,16 @@ public class watchZK {
                         }
                         String[] oldPathList = pasrePath(childData);
                         String[] newPathList = pasrePath(childData1);
-                        cache.replaceServiceAddress(oldPathList[1], oldPathList[2], newPathList[2]);
-                        log.info("节点更新：服务名称 {} 地址从 {} 更新为 {}", oldPathList[1], oldPathList[2], newPathList[2]);
+                        //服务名节点本身的数据变化与地址无关
+                        if (oldPathList.length <= 2 || newPathList.length <= 2) break;
+                        if (!oldPathList[2].equals(newPathList[2])) {
+                            cache.replaceServiceAddress(oldPathList[1], oldPathList[2], newPathList[2]);
+                            log.info("节点更新：服务名称 {} 地址从 {} 更新为 {}", oldPathList[1], oldPathList[2], newPathList[2]);
+                        }
+                        //提供者修改了发布的元数据（如权重）
+                        ProviderMetadata newMetadata = ProviderMetadata.parse(childData1.getData());
+                        cache.addServiceToCache(newPathList[1], newPathList[2], newMetadata);
+                        log.info("节点更新：服务名称 {} 地址 {} 元数据更新为 {}", newPathList[1], newPathList[2], newMetadata);
                         break;
                     case "NODE_DELETED": // 节点删除
                         String[] pathList_d = pasrePath(childData);
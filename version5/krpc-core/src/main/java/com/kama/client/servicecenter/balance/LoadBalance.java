@@ -1,19 +1,64 @@
 package com.kama.client.servicecenter.balance;
 
 
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
+
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 /**
  * @InterfaceName LoadBalance
  * @Description 负载均衡接口
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:40
+ * @LastChangeDate 2024-12-17 10:00
  * @Version v5.0
  */
 
 public interface LoadBalance {
     String balance(List<String> addressList);
 
+    /**
+     * 基于地址快照选择地址，返回已解析的 Endpoint；需要由地址列表预先计算结构的实现可按快照版本号缓存
+     */
+    default Endpoint select(ServiceSnapshot snapshot) {
+        return snapshot.findEndpoint(balance(snapshot.getAddressList()));
+    }
+
+    /**
+     * 按请求的哈希键（@HashKey 标记的参数值）选择地址，不支持按键路由的实现忽略该键
+     */
+    default Endpoint select(ServiceSnapshot snapshot, Object hashKey) {
+        return select(snapshot);
+    }
+
+    /**
+     * 选择地址时跳过被排除的地址（如该地址上此方法的熔断器已开启），全部被排除时返回 null
+     * 默认先按原方式选择，选中被排除的地址时从随机位置起取第一个未被排除的地址，不需要为排除后的地址重建结构
+     */
+    default Endpoint select(ServiceSnapshot snapshot, Object hashKey, Predicate<Endpoint> excluded) {
+        Endpoint endpoint = select(snapshot, hashKey);
+        if (excluded == null || !excluded.test(endpoint)) {
+            return endpoint;
+        }
+        int size = snapshot.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Endpoint candidate = snapshot.getEndpoint((start + i) % size);
+            if (!excluded.test(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 服务的地址快照发生变化，在注册中心监听线程中回调；实现可在此预先构建结构，避免在调用路径上构建
+     */
+    default void onSnapshotChanged(ServiceSnapshot snapshot) {
+    }
+
     void addNode(String node);
 
     void delNode(String node);
@@ -0,0 +1,53 @@
+package com.kama.client.servicecenter.balance;
+
+import com.kama.client.servicecenter.balance.impl.ConsistencyHashBalance;
+import com.kama.client.servicecenter.balance.impl.LeastActiveLoadBalance;
+import com.kama.client.servicecenter.balance.impl.PeakEwmaLoadBalance;
+import com.kama.client.servicecenter.balance.impl.RandomLoadBalance;
+import com.kama.client.servicecenter.balance.impl.RoundLoadBalance;
+import com.kama.client.servicecenter.balance.impl.WeightedRoundLoadBalance;
+import com.kama.config.KRpcConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @ClassName LoadBalanceFactory
+ * @Description 按配置 rpc.loadBalance 创建负载均衡，名称与实现的 toString 一致，不区分大小写
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 22:00
+ * @Version v5.0
+ */
+@Slf4j
+public final class LoadBalanceFactory {
+    public static final String CONSISTENCY_HASH = "ConsistencyHash";
+    public static final String RANDOM = "Random";
+    public static final String ROUND = "Round";
+    public static final String LEAST_ACTIVE = "LeastActive";
+    public static final String PEAK_EWMA = "PeakEwma";
+    public static final String WEIGHTED_ROUND = "WeightedRound";
+
+    private LoadBalanceFactory() {
+    }
+
+    public static LoadBalance create(KRpcConfig config) {
+        String name = config.getLoadBalance();
+        if (RANDOM.equalsIgnoreCase(name)) {
+            return new RandomLoadBalance();
+        }
+        if (ROUND.equalsIgnoreCase(name)) {
+            return new RoundLoadBalance();
+        }
+        if (LEAST_ACTIVE.equalsIgnoreCase(name)) {
+            return new LeastActiveLoadBalance();
+        }
+        if (PEAK_EWMA.equalsIgnoreCase(name)) {
+            return new PeakEwmaLoadBalance();
+        }
+        if (WEIGHTED_ROUND.equalsIgnoreCase(name)) {
+            return new WeightedRoundLoadBalance();
+        }
+        if (!CONSISTENCY_HASH.equalsIgnoreCase(name)) {
+            log.warn("未知的负载均衡类型: {}，使用一致性哈希", name);
+        }
+        return new ConsistencyHashBalance(config.getVirtualNodes());
+    }
+}
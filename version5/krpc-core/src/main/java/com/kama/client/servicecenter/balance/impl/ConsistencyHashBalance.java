@@ -1,18 +1,24 @@
 package com.kama.client.servicecenter.balance.impl;
 
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
 import com.kama.client.servicecenter.balance.LoadBalance;
 import lombok.extern.slf4j.Slf4j;
 
 
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 /**
  * @ClassName ConsistencyHashBalance
  * @Description 一致性哈希算法负载均衡
+ * 按服务维护由地址快照构建的只读哈希环，地址变化时在注册中心监听线程中重建，调用路径上只做二分查找；
+ * 请求带 @HashKey 参数时按参数值路由，相同的键总是落到同一个地址，地址增减时只有少量键迁移
+ * init、getServer、addNode、delNode 为按节点名维护的旧版接口，虚拟节点数固定为 VIRTUAL_NUM
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:42
+ * @LastChangeDate 2024-12-17 10:00
  * @Version v5.0
  */
 @Slf4j
@@ -27,6 +33,26 @@ public class ConsistencyHashBalance implements LoadBalance {
     // 真实节点列表
     private List<String> realNodes = new LinkedList<>();
 
+    // 按地址快照构建哈希环时默认的虚拟节点数
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    // 按地址快照构建的哈希环，key是服务名，快照版本不变时复用
+    private final Map<String, HashRing> rings = new ConcurrentHashMap<>();
+
+    // 哈希环中每个地址的虚拟节点数
+    private final int virtualNodes;
+
+    public ConsistencyHashBalance() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistencyHashBalance(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
     // 获取虚拟节点的个数
     public static int getVirtualNum() {
         return VIRTUAL_NUM;
@@ -137,6 +163,61 @@ public class ConsistencyHashBalance implements LoadBalance {
         String random = UUID.randomUUID().toString();
         return getServer(random, addressList);
     }
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot) {
+        return select(snapshot, null);
+    }
+
+    /**
+     * 按哈希键在服务的哈希环上选择地址，没有哈希键时随机选择
+     * 哈希环通常已在快照变化时构建好，这里只做一次 map 查找和一次二分查找
+     */
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot, Object hashKey) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        return select(snapshot, hashKey, null);
+    }
+
+    /**
+     * 哈希键对应的地址被排除时，沿环顺时针取下一个未被排除的地址，同一个键仍稳定地落到同一个地址
+     */
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot, Object hashKey, Predicate<Endpoint> excluded) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        HashRing ring = rings.get(snapshot.getServiceName());
+        if (ring == null || ring.version != snapshot.getVersion()) {
+            // 未收到变化通知（如从注册中心直接拉取的地址）、通知尚未到达，或传入的是过滤后的快照时，在调用线程中构建
+            ring = rings.compute(snapshot.getServiceName(), (name, current) ->
+                    current != null && current.version == snapshot.getVersion() ? current : new HashRing(snapshot, virtualNodes));
+        }
+        int hash = hashKey != null ? getHash(String.valueOf(hashKey)) : ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE;
+        return ring.locate(hash, excluded);
+    }
+
+    @Override
+    public void onSnapshotChanged(ServiceSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            rings.remove(snapshot.getServiceName());
+            return;
+        }
+        updateRing(snapshot);
+    }
+
+    // 用快照构建新的哈希环并替换旧环，已有的环版本更新时保留已有的环（通知线程晚于调用线程时）
+    private HashRing updateRing(ServiceSnapshot snapshot) {
+        return rings.compute(snapshot.getServiceName(), (name, current) ->
+                current != null && current.version >= snapshot.getVersion() ? current : new HashRing(snapshot, virtualNodes));
+    }
+
+    // 哈希环使用的虚拟节点数
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
     public SortedMap<Integer, String> getShards() {
         return shards;
     }
@@ -148,5 +229,54 @@ public class ConsistencyHashBalance implements LoadBalance {
     public String toString() {
         return "ConsistencyHash";
     }
-}
 
+    // 某个快照版本的哈希环，构建后只读
+    // 虚拟节点的哈希值按升序存放在 int 数组中，对应的地址存放在同下标的数组中，查找为一次二分查找
+    private static final class HashRing {
+        private final long version;
+        private final int[] hashes;
+        private final Endpoint[] nodes;
+
+        private HashRing(ServiceSnapshot snapshot, int virtualNodes) {
+            this.version = snapshot.getVersion();
+            int size = snapshot.size() * virtualNodes;
+            // 高 32 位为哈希值（非负），低 32 位为地址下标，排序后即按哈希值有序
+            long[] entries = new long[size];
+            int n = 0;
+            for (int e = 0; e < snapshot.size(); e++) {
+                String address = snapshot.getEndpoint(e).getAddress();
+                for (int i = 0; i < virtualNodes; i++) {
+                    entries[n++] = ((long) getHash(address + "&&VN" + i) << 32) | e;
+                }
+            }
+            Arrays.sort(entries);
+            this.hashes = new int[size];
+            this.nodes = new Endpoint[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = (int) (entries[i] >>> 32);
+                nodes[i] = snapshot.getEndpoint((int) entries[i]);
+            }
+        }
+
+        // 顺时针找到第一个哈希值不小于 hash 且未被排除的虚拟节点，超过最大值时回到环的起点
+        private Endpoint locate(int hash, Predicate<Endpoint> excluded) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == hashes.length) {
+                    index = 0;
+                }
+            }
+            if (excluded == null) {
+                return nodes[index];
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                Endpoint endpoint = nodes[(index + i) % nodes.length];
+                if (!excluded.test(endpoint)) {
+                    return endpoint;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.kama.client.servicecenter.balance.impl;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.LoadBalance;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @ClassName LeastActiveLoadBalance
+ * @Description 最少活跃数法：选择在途请求最少的服务提供者，响应变慢（如 GC 停顿）的提供者积压的请求多，自然少分到请求
+ * 在途请求数由客户端调用路径维护在 Endpoint 的统计中；活跃数相同的地址之间随机选择
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 14:00
+ * @Version v5.0
+ */
+@Slf4j
+public class LeastActiveLoadBalance implements LoadBalance {
+
+    //只有地址字符串时没有活跃数信息，随机选择
+    @Override
+    public String balance(List<String> addressList) {
+        if (addressList == null || addressList.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        return addressList.get(ThreadLocalRandom.current().nextInt(addressList.size()));
+    }
+
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint chosen = null;
+        long leastActive = Long.MAX_VALUE;
+        //当前最少活跃数的地址个数
+        int ties = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            Endpoint endpoint = snapshot.getEndpoint(i);
+            long active = endpoint.getStats().getActive();
+            if (active < leastActive) {
+                leastActive = active;
+                chosen = endpoint;
+                ties = 1;
+            } else if (active == leastActive && random.nextInt(++ties) == 0) {
+                //蓄水池抽样：第 k 个并列的地址以 1/k 的概率替换，一次遍历即可在并列者中等概率选择
+                chosen = endpoint;
+            }
+        }
+        return chosen;
+    }
+
+    @Override
+    public void addNode(String node) {
+        // 地址列表由快照提供，这里只记录日志
+        log.info("节点 {} 已加入负载均衡", node);
+    }
+
+    @Override
+    public void delNode(String node) {
+        log.info("节点 {} 已从负载均衡中移除", node);
+    }
+
+    @Override
+    public String toString() {
+        return "LeastActive";
+    }
+}
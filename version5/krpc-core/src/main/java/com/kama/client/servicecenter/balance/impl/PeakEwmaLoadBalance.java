@@ -0,0 +1,69 @@
+package com.kama.client.servicecenter.balance.impl;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.LoadBalance;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @ClassName PeakEwmaLoadBalance
+ * @Description peak-EWMA 两次随机选择法：随机取两个不同的地址，选择 延迟EWMA ×（在途请求数 + 1）较小的一个
+ * 延迟样本由客户端在请求完成时写入 Endpoint 的统计；选择时只读取统计，不加锁也不写共享变量
+ * 只比较两个地址，避免所有客户端同时涌向同一个“最快”的地址
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 18:00
+ * @Version v5.0
+ */
+@Slf4j
+public class PeakEwmaLoadBalance implements LoadBalance {
+
+    //只有地址字符串时没有延迟信息，随机选择
+    @Override
+    public String balance(List<String> addressList) {
+        if (addressList == null || addressList.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        return addressList.get(ThreadLocalRandom.current().nextInt(addressList.size()));
+    }
+
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        int size = snapshot.size();
+        if (size == 1) {
+            return snapshot.getEndpoint(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        //第二个下标跳过第一个，保证两个地址不同
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = snapshot.getEndpoint(first);
+        Endpoint b = snapshot.getEndpoint(second);
+        long now = System.nanoTime();
+        return a.getStats().getCost(now) <= b.getStats().getCost(now) ? a : b;
+    }
+
+    @Override
+    public void addNode(String node) {
+        // 地址列表由快照提供，这里只记录日志
+        log.info("节点 {} 已加入负载均衡", node);
+    }
+
+    @Override
+    public void delNode(String node) {
+        log.info("节点 {} 已从负载均衡中移除", node);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwma";
+    }
+}
@@ -1,21 +1,28 @@
 package com.kama.client.servicecenter.balance.impl;
 
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
 import com.kama.client.servicecenter.balance.LoadBalance;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @ClassName RandomLoadBalance
  * @Description 随机法
+ * 基于地址快照选择时等概率随机，只有预热期内的提供者按预热进度降低被选中的概率，分到的请求随启动时长逐步增加
+ * 注册中心发布的权重不参与随机，需要按权重分配请求时使用加权轮询
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:40
+ * @LastChangeDate 2024-12-17 21:00
  * @Version v5.0
  */
 @Slf4j
 public class RandomLoadBalance implements LoadBalance {
+    //预热结束的提供者的权重，预热中的提供者按预热进度取其一部分
+    private static final int WARMUP_SCALE = 100;
     // 将Random声明为类级别的字段
     private final Random random = new Random();
 
@@ -32,6 +39,36 @@ public class RandomLoadBalance implements LoadBalance {
         return addressList.get(choose);  // 返回选择的服务器地址
     }
 
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        int size = snapshot.size();
+        long now = System.currentTimeMillis();
+        long total = 0;
+        boolean sameWeight = true;
+        int firstWeight = snapshot.getMetadata(0).getWarmupWeight(now, WARMUP_SCALE);
+        for (int i = 0; i < size; i++) {
+            int weight = snapshot.getMetadata(i).getWarmupWeight(now, WARMUP_SCALE);
+            total += weight;
+            sameWeight &= weight == firstWeight;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sameWeight) {
+            return snapshot.getEndpoint(random.nextInt(size));
+        }
+        // 在 [0, 总权重) 中取随机数，落在哪个地址的权重区间就选哪个
+        long offset = random.nextLong(total);
+        for (int i = 0; i < size; i++) {
+            offset -= snapshot.getMetadata(i).getWarmupWeight(now, WARMUP_SCALE);
+            if (offset < 0) {
+                return snapshot.getEndpoint(i);
+            }
+        }
+        return snapshot.getEndpoint(size - 1);
+    }
+
     @Override
     public void addNode(String node) {
         // 如果是动态添加节点，可以将节点加入到addressList中
@@ -45,4 +82,9 @@ public class RandomLoadBalance implements LoadBalance {
         addressList.remove(node);
         log.info("节点 {} 已从负载均衡中移除", node);
     }
+
+    @Override
+    public String toString() {
+        return "Random";
+    }
 }
@@ -11,7 +11,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @ClassName RoundLoadBalance
  * @Description 轮询法
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:41
+ * @LastChangeDate 2024-12-15 14:00
  * @Version v5.0
  */
 @Slf4j
@@ -49,4 +49,9 @@ public class RoundLoadBalance implements LoadBalance {
         addressList.remove(node);
         log.info("节点 {} 已从负载均衡中移除", node);
     }
+
+    @Override
+    public String toString() {
+        return "Round";
+    }
 }
@@ -0,0 +1,172 @@
+package com.kama.client.servicecenter.balance.impl;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.LoadBalance;
+import common.message.ProviderMetadata;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName WeightedRoundLoadBalance
+ * @Description 平滑加权轮询（nginx 的 smooth weighted round-robin）：权重为提供者在注册中心发布的权重
+ * 每一轮中各地址被选中的次数与权重成正比，且同一地址的选择均匀穿插，不会连续集中在高权重的地址上
+ * 一轮的选择序列只由地址与权重决定，因此在快照变化时预先算好整轮序列，调用路径上只做一次原子自增和数组下标访问
+ * 有地址处于预热期时按有效权重构建序列，并在预热期内每隔一段时间重建，使其流量逐步上升
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 10:00
+ * @Version v5.0
+ */
+@Slf4j
+public class WeightedRoundLoadBalance implements LoadBalance {
+    //一轮序列的最大长度，权重之和超过时按比例缩小权重
+    private static final int MAX_SCHEDULE_LENGTH = 8192;
+    //预热期内重建选择序列的间隔（毫秒）
+    private static final long WARMUP_REBUILD_INTERVAL = 1000;
+
+    // 按服务名缓存的选择序列，快照版本不变时复用
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    // 只有地址字符串时没有权重信息，按普通轮询选择
+    private final AtomicInteger choose = new AtomicInteger(0);
+
+    @Override
+    public String balance(List<String> addressList) {
+        if (addressList == null || addressList.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        return addressList.get((choose.getAndIncrement() & Integer.MAX_VALUE) % addressList.size());
+    }
+
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            throw new IllegalArgumentException("Address list cannot be null or empty");
+        }
+        Schedule schedule = schedules.get(snapshot.getServiceName());
+        if (schedule == null || schedule.version != snapshot.getVersion()
+                || (schedule.rebuildAt != Long.MAX_VALUE && System.currentTimeMillis() >= schedule.rebuildAt)) {
+            // 未收到变化通知、通知尚未到达、传入的是过滤后的快照或预热中需要按新的有效权重重建时，在调用线程中构建
+            schedule = schedules.compute(snapshot.getServiceName(), (name, current) -> {
+                long now = System.currentTimeMillis();
+                if (current != null && current.version == snapshot.getVersion() && now < current.rebuildAt) {
+                    return current;
+                }
+                return new Schedule(snapshot, now);
+            });
+        }
+        return schedule.next();
+    }
+
+    @Override
+    public void onSnapshotChanged(ServiceSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            schedules.remove(snapshot.getServiceName());
+            return;
+        }
+        updateSchedule(snapshot);
+    }
+
+    // 用快照构建新的选择序列并替换旧序列；已有的序列版本更新（通知线程晚于调用线程时），或版本相同且无需重建时保留已有的序列
+    private Schedule updateSchedule(ServiceSnapshot snapshot) {
+        return schedules.compute(snapshot.getServiceName(), (name, current) -> {
+            long now = System.currentTimeMillis();
+            if (current != null && (current.version > snapshot.getVersion()
+                    || (current.version == snapshot.getVersion() && now < current.rebuildAt))) {
+                return current;
+            }
+            return new Schedule(snapshot, now);
+        });
+    }
+
+    @Override
+    public void addNode(String node) {
+        // 地址列表由快照提供，这里只记录日志
+        log.info("节点 {} 已加入负载均衡", node);
+    }
+
+    @Override
+    public void delNode(String node) {
+        log.info("节点 {} 已从负载均衡中移除", node);
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedRound";
+    }
+
+    // 某个快照版本的一轮选择序列，构建后只读
+    private static final class Schedule {
+        private final long version;
+        // 需要重建的时间（毫秒时间戳），没有地址在预热期时为 Long.MAX_VALUE
+        private final long rebuildAt;
+        private final Endpoint[] sequence;
+        // 从随机位置开始，避免多个客户端同时从同一个地址开始
+        private final AtomicInteger position;
+
+        private Schedule(ServiceSnapshot snapshot, long now) {
+            this.version = snapshot.getVersion();
+            int size = snapshot.size();
+            int[] weights = new int[size];
+            int gcd = 0;
+            long warmupEnd = 0;
+            for (int i = 0; i < size; i++) {
+                ProviderMetadata metadata = snapshot.getMetadata(i);
+                weights[i] = metadata.getEffectiveWeight(now);
+                gcd = gcd(gcd, weights[i]);
+                if (metadata.isWarmingUp(now)) {
+                    warmupEnd = Math.max(warmupEnd, metadata.getWarmupEndTime());
+                }
+            }
+            // 预热期内定期重建，最后一次在预热结束时按完整权重重建
+            this.rebuildAt = warmupEnd == 0 ? Long.MAX_VALUE : Math.min(now + WARMUP_REBUILD_INTERVAL, warmupEnd);
+            // 权重同除以最大公约数，得到最短的一轮
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                weights[i] /= gcd;
+                total += weights[i];
+            }
+            if (total > MAX_SCHEDULE_LENGTH) {
+                long scaled = 0;
+                for (int i = 0; i < size; i++) {
+                    weights[i] = (int) Math.max(1, (long) weights[i] * MAX_SCHEDULE_LENGTH / total);
+                    scaled += weights[i];
+                }
+                total = scaled;
+            }
+            this.sequence = new Endpoint[(int) total];
+            // 平滑加权轮询：每次每个地址的当前权重加上其权重，选当前权重最大的，被选中的减去总权重
+            long[] current = new long[size];
+            for (int k = 0; k < sequence.length; k++) {
+                int best = 0;
+                for (int i = 0; i < size; i++) {
+                    current[i] += weights[i];
+                    if (current[i] > current[best]) {
+                        best = i;
+                    }
+                }
+                current[best] -= total;
+                sequence[k] = snapshot.getEndpoint(best);
+            }
+            this.position = new AtomicInteger(ThreadLocalRandom.current().nextInt(sequence.length));
+        }
+
+        private Endpoint next() {
+            return sequence[(position.getAndIncrement() & Integer.MAX_VALUE) % sequence.length];
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.kama.config;
 
 import com.kama.client.servicecenter.balance.impl.ConsistencyHashBalance;
-import com.kama.server.serviceRegister.impl.ZKServiceRegister;
 import common.serializer.myserializer.Serializer;
 import lombok.*;
 
@@ -9,7 +8,7 @@ import lombok.*;
  * @ClassName KRpcConfig
  * @Description 配置文件
  * @Author Tong
- * @LastChangeDate 2024-12-05 11:02
+ * @LastChangeDate 2024-12-18 15:00
  * @Version v5.0
  */
 @AllArgsConstructor
@@ -28,10 +27,95 @@ public class KRpcConfig {
     //版本号
     private String version = "1.0.0";
     //注册中心
-    private String registry = new ZKServiceRegister().toString();
+    private String registry = "zookeeper";
     //序列化器
     private String serializer = Serializer.getSerializerByCode(3).toString();
-    //负载均衡
+    //负载均衡：ConsistencyHash（一致性哈希）、Random（随机）、Round（轮询）、LeastActive（最少活跃数）、PeakEwma（按延迟与在途请求数的两次随机选择）、
+    //WeightedRound（按提供者发布的权重平滑加权轮询）
     private String loadBalance = new ConsistencyHashBalance().toString();
+    //每个服务地址保持的长连接数
+    private Integer maxConnectionsPerAddress = 2;
+    //单个连接上允许的最大在途请求数
+    private Integer maxInFlightPerConnection = 1024;
+    //连接建立失败或未收到任何响应就被关闭（如服务端连接数已满）后，重连的初始退避时间（毫秒），连续失败时翻倍
+    private Long reconnectBackoffMillis = 100L;
+    //重连退避时间的上限（毫秒）
+    private Long maxReconnectBackoffMillis = 10000L;
+    //默认调用超时（毫秒），可被方法上的@Timeout覆盖
+    private Long timeout = 5000L;
+    //传输实现：nio、epoll、io_uring，原生传输不可用时回退为nio
+    private String transport = "nio";
+    //是否关闭Nagle算法
+    private Boolean tcpNoDelay = true;
+    //epoll下是否开启SO_REUSEPORT
+    private Boolean reusePort = false;
+    //epoll下是否使用边缘触发模式
+    private Boolean epollEdgeTriggered = true;
+    //单个消息帧的最大字节数，超过则断开连接
+    private Integer maxFrameLength = 8 * 1024 * 1024;
+    //协议版本：2为带魔数与请求ID的新帧头；灰度期间访问旧版本服务端时配置为1，此时每条连接同时只有一个在途请求，响应按发送顺序匹配
+    private Integer protocolVersion = 2;
+    //服务端业务线程池类型：threadpool（有界队列的ThreadPoolExecutor）、forkjoin、virtual（每个请求一个虚拟线程）
+    private String executorType = "threadpool";
+    //业务线程数（forkjoin下为并行度，virtual下与排队上限之和为最大并发请求数）
+    private Integer executorThreads = 200;
+    //业务线程池的排队上限，超出时直接返回失败
+    private Integer executorQueueCapacity = 1024;
+    //使用独立线程池的服务接口名，逗号分隔
+    private String isolatedServices = "";
+    //服务端连接空闲（未收到任何数据）多少秒后关闭，0为不检测
+    private Integer serverIdleTimeoutSeconds = 90;
+    //服务端最大连接数，超出时新连接在注册时以RST关闭，客户端连接池对该地址退避重连
+    private Integer maxServerConnections = 10000;
+    //服务端默认限流方式：tokenbucket（固定速率令牌桶）、vegas（按延迟自适应调整并发上限）
+    private String rateLimitType = "tokenbucket";
+    //vegas下的初始并发上限
+    private Integer concurrencyLimitInitial = 20;
+    //vegas下并发上限的最大值
+    private Integer concurrencyLimitMax = 1000;
+    //客户端连接无写入多少秒后发送心跳，需小于服务端空闲超时；0为不发送
+    private Integer heartbeatIntervalSeconds = 30;
+    //一致性哈希中每个服务地址的虚拟节点数，越多分布越均匀，地址增减时迁移的键越少
+    private Integer virtualNodes = 160;
+    //服务端发布到注册中心的权重，0为默认权重（可用处理器数，客户端对未发布权重的旧提供者使用同一默认值）
+    private Integer weight = 0;
+    //服务端预热时长（秒），发布到注册中心，客户端在此期间按启动时长逐步提升其权重；0为不预热
+    private Integer warmupSeconds = 60;
+    //服务端注册前在本地预热编解码与方法查找的次数，0为不预热
+    private Integer localWarmupIterations = 2000;
+    //客户端是否检测并临时摘除异常的服务提供者
+    private Boolean outlierDetection = true;
+    //连续失败多少次后摘除
+    private Integer outlierConsecutiveFailures = 5;
+    //一个检测周期内错误率达到多少后摘除
+    private Double outlierErrorRate = 0.5;
+    //按错误率判定时一个检测周期内至少需要的调用次数
+    private Integer outlierMinRequests = 20;
+    //延迟 EWMA 超过同服务实例中位数的多少倍后摘除
+    private Double outlierLatencyFactor = 3.0;
+    //检测周期（毫秒）
+    private Integer outlierIntervalMillis = 10000;
+    //首次摘除的时长（毫秒），之后每次摘除翻倍
+    private Integer outlierBaseEjectionMillis = 30000;
+    //单次摘除的最长时长（毫秒）
+    private Integer outlierMaxEjectionMillis = 300000;
+    //同一服务最多摘除的实例比例（百分比）
+    private Integer outlierMaxEjectionPercent = 50;
+    //熔断器的统计窗口时长（毫秒），熔断器按服务地址和方法签名区分
+    private Integer circuitBreakerWindowMillis = 10000;
+    //统计窗口划分的桶数
+    private Integer circuitBreakerBuckets = 10;
+    //窗口内至少需要多少次调用才按比例判定
+    private Integer circuitBreakerMinimumRequests = 20;
+    //失败率达到多少后开启熔断
+    private Double circuitBreakerFailureRate = 0.5;
+    //慢调用率达到多少后开启熔断，大于1为不按慢调用熔断
+    private Double circuitBreakerSlowCallRate = 0.8;
+    //耗时达到多少毫秒计为慢调用
+    private Integer circuitBreakerSlowCallMillis = 2000;
+    //熔断开启的时长（毫秒），之后进入半开启
+    private Integer circuitBreakerOpenMillis = 10000;
+    //半开启状态下放行的探测请求数
+    private Integer circuitBreakerHalfOpenPermits = 5;
 
 }
@@ -0,0 +1,70 @@
+package com.kama.metric;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * @ClassName RpcMetrics
+ * @Description 进程内的轻量计数指标，按名称累加，可随时取快照上报或打印
+ * 另支持仪表盘型指标（gauge），取快照时实时读取当前值
+ * @Author Tong
+ * @LastChangeDate 2024-12-14 10:30
+ * @Version v5.0
+ */
+public class RpcMetrics {
+    //key: 指标名，value: 计数
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    //key: 指标名，value: 当前值的读取函数
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private RpcMetrics() {
+    }
+
+    public static void increment(String name) {
+        counter(name).increment();
+    }
+
+    public static void add(String name, long delta) {
+        counter(name).add(delta);
+    }
+
+    public static long get(String name) {
+        LongAdder adder = counters.get(name);
+        if (adder != null) {
+            return adder.sum();
+        }
+        LongSupplier gauge = gauges.get(name);
+        return gauge != null ? gauge.getAsLong() : 0L;
+    }
+
+    //注册仪表盘型指标，同名时覆盖
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    //移除指标，用于随连接等对象消亡的指标
+    public static void remove(String name) {
+        counters.remove(name);
+        gauges.remove(name);
+    }
+
+    //按名称排序的当前值
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, adder) -> snapshot.put(name, adder.sum()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        return snapshot;
+    }
+
+    //获取计数器，热点路径上可缓存返回值以省去按名称查找
+    public static LongAdder counter(String name) {
+        LongAdder adder = counters.get(name);
+        if (adder != null) {
+            return adder;
+        }
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+}
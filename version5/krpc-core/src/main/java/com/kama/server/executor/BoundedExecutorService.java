@@ -0,0 +1,72 @@
+package com.kama.server.executor;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName BoundedExecutorService
+ * @Description 为队列无界的线程池（如ForkJoinPool）限制同时提交的任务数，超出时拒绝
+ * @Author Tong
+ * @LastChangeDate 2024-12-12 17:10
+ * @Version v5.0
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final int maxPending;
+    //已提交但尚未执行完的任务数
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public BoundedExecutorService(ExecutorService delegate, int maxPending) {
+        this.delegate = delegate;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("任务队列已满，当前任务数: " + maxPending);
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,108 @@
+package com.kama.server.executor;
+
+import com.kama.config.KRpcConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @ClassName ExecutorProvider
+ * @Description 提供业务线程池，服务方法在业务线程上执行，不占用Netty的IO线程
+ * 默认所有服务共用一个线程池，配置在 isolatedServices 中的服务使用独立的线程池，互不影响
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 10:30
+ * @Version v5.0
+ */
+@Slf4j
+public class ExecutorProvider {
+    public static final String THREAD_POOL = "threadpool";
+    public static final String FORK_JOIN = "forkjoin";
+    public static final String VIRTUAL = "virtual";
+
+    private final String executorType;
+    private final int threads;
+    private final int queueCapacity;
+    //需要独立线程池的服务（接口名）
+    private final Set<String> isolatedServices;
+
+    //共享线程池
+    private final ExecutorService sharedExecutor;
+    //key: 接口名，value: 该服务独立的线程池
+    private final Map<String, ExecutorService> isolatedExecutors = new ConcurrentHashMap<>();
+    //虚拟线程模式下监控钉住
+    private final PinnedThreadMonitor pinnedThreadMonitor = new PinnedThreadMonitor();
+
+    public ExecutorProvider(KRpcConfig config) {
+        this.executorType = config.getExecutorType();
+        this.threads = config.getExecutorThreads();
+        this.queueCapacity = config.getExecutorQueueCapacity();
+        this.isolatedServices = parseServices(config.getIsolatedServices());
+        this.sharedExecutor = createExecutor("rpc-biz");
+        if (isVirtual()) {
+            pinnedThreadMonitor.start();
+        }
+        log.info("业务线程池类型: {}，线程数: {}，队列容量: {}，独立线程池的服务: {}",
+                executorType, threads, queueCapacity, isolatedServices);
+    }
+
+    //获取执行该服务的线程池
+    public ExecutorService getExecutor(String interfaceName) {
+        if (!isolatedServices.contains(interfaceName)) {
+            return sharedExecutor;
+        }
+        return isolatedExecutors.computeIfAbsent(interfaceName,
+                key -> createExecutor("rpc-biz-" + key.substring(key.lastIndexOf('.') + 1)));
+    }
+
+    //是否每个请求使用一个虚拟线程
+    public boolean isVirtual() {
+        return VIRTUAL.equalsIgnoreCase(executorType);
+    }
+
+    public void shutdown() {
+        sharedExecutor.shutdown();
+        isolatedExecutors.values().forEach(ExecutorService::shutdown);
+        pinnedThreadMonitor.stop();
+    }
+
+    //队列满时抛出 RejectedExecutionException，由调用方快速返回失败
+    private ExecutorService createExecutor(String poolName) {
+        if (FORK_JOIN.equalsIgnoreCase(executorType)) {
+            // ForkJoinPool 的队列无界，用计数限制排队的任务数
+            return new BoundedExecutorService(new ForkJoinPool(threads), threads + queueCapacity);
+        }
+        if (isVirtual()) {
+            // 每个请求一个虚拟线程，阻塞调用只挂起虚拟线程；同样限制同时执行的请求数
+            ThreadFactory factory = Thread.ofVirtual().name(poolName + "-virtual-", 0).factory();
+            return new BoundedExecutorService(Executors.newThreadPerTaskExecutor(factory), threads + queueCapacity);
+        }
+        if (!THREAD_POOL.equalsIgnoreCase(executorType)) {
+            log.warn("未知的业务线程池类型: {}，使用 {}", executorType, THREAD_POOL);
+        }
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DefaultThreadFactory(poolName, true),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static Set<String> parseServices(String services) {
+        if (services == null || services.isBlank()) {
+            return Set.of();
+        }
+        return Arrays.stream(services.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -0,0 +1,76 @@
+package com.kama.server.executor;
+
+import com.kama.metric.RpcMetrics;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @ClassName PinnedThreadMonitor
+ * @Description 通过JFR事件流监听虚拟线程被钉住（jdk.VirtualThreadPinned），
+ * 例如在 synchronized 代码块中阻塞时，虚拟线程无法让出载体线程
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 10:30
+ * @Version v5.0
+ */
+@Slf4j
+public class PinnedThreadMonitor {
+    //被钉住的次数
+    public static final String PINNED_COUNT = "rpc.server.virtual.pinned";
+    //被钉住的总时长（纳秒）
+    public static final String PINNED_NANOS = "rpc.server.virtual.pinned.nanos";
+    private static final String EVENT_NAME = "jdk.VirtualThreadPinned";
+    //与JDK默认配置一致，只记录超过20ms的钉住
+    private static final Duration THRESHOLD = Duration.ofMillis(20);
+
+    private RecordingStream stream;
+
+    public synchronized void start() {
+        if (stream != null) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(EVENT_NAME).withThreshold(THRESHOLD).withStackTrace();
+            stream.onEvent(EVENT_NAME, this::onPinned);
+            stream.startAsync();
+            log.info("虚拟线程钉住监控已启动，阈值: {}ms", THRESHOLD.toMillis());
+        } catch (RuntimeException e) {
+            // JFR 不可用时不影响服务运行
+            log.warn("虚拟线程钉住监控启动失败: {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RpcMetrics.increment(PINNED_COUNT);
+        RpcMetrics.add(PINNED_NANOS, event.getDuration().toNanos());
+        log.warn("虚拟线程被钉住 {}ms，位置: {}", event.getDuration().toMillis(), topFrame(event));
+    }
+
+    private static String topFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        // 跳过JDK内部的park等帧，找到第一个业务帧
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return frames.isEmpty() ? "unknown" : frames.get(0).getMethod().getName();
+    }
+}
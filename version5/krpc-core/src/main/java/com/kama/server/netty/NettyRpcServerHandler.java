@@ -3,22 +3,25 @@ package com.kama.server.netty;
 
 import common.message.RpcRequest;
 import common.message.RpcResponse;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.kama.server.provider.MethodInvoker;
 import com.kama.server.provider.ServiceProvider;
 import com.kama.server.ratelimit.RateLimit;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.WrongMethodTypeException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @ClassName NettyRpcServerHandler
  * @Description 服务端处理器
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:26
+ * @LastChangeDate 2024-12-18 11:30
  * @Version v5.0
  */
 @AllArgsConstructor  // 使用 Lombok 自动生成构造器
@@ -33,8 +36,56 @@ public class NettyRpcServerHandler extends SimpleChannelInboundHandler<RpcReques
             log.error("接收到非法请求，RpcRequest 为空");
             return;
         }
-        RpcResponse response = getResponse(request);
-        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        //接口/方法限流降级；在进入业务线程池之前获取许可，自适应限流器测得的耗时包含线程池中的排队时间
+        String interfaceName = request.getInterfaceName();
+        RateLimit rateLimit = serviceProvider.getRateLimitProvider().getRateLimit(interfaceName, request.getMethodName());
+        if (!rateLimit.getToken()) {
+            //如果获取令牌失败，进行限流降级，快速返回结果
+            log.warn("服务限流，接口: {}", interfaceName);
+            writeResponse(ctx, request, RpcResponse.rateLimited("服务限流，接口 " + interfaceName + " 当前无法处理请求。请稍后再试。"));
+            return;
+        }
+        long startNanos = System.nanoTime();
+        // 反射调用及服务方法都在业务线程池中执行，慢调用不会阻塞同一IO线程上的其他连接
+        ExecutorService executor = serviceProvider.getExecutorProvider().getExecutor(interfaceName);
+        try {
+            executor.execute(() -> handleRequest(ctx, request, rateLimit, startNanos));
+        } catch (RejectedExecutionException e) {
+            // 线程池已满，快速失败；请求没有执行，只归还许可，不作为耗时样本
+            rateLimit.release(0);
+            log.warn("业务线程池已满，拒绝请求，接口: {}", interfaceName);
+            writeResponse(ctx, request, RpcResponse.fail("服务端繁忙，请稍后再试"));
+        }
+    }
+
+    private void handleRequest(ChannelHandlerContext ctx, RpcRequest request, RateLimit rateLimit, long startNanos) {
+        CompletableFuture<RpcResponse> future;
+        try {
+            future = invoke(request);
+        } catch (Exception e) {
+            rateLimit.release(System.nanoTime() - startNanos);
+            log.error("处理请求时发生异常，接口: {}, 方法: {}", request.getInterfaceName(), request.getMethodName(), e);
+            writeResponse(ctx, request, RpcResponse.fail("方法执行错误"));
+            return;
+        }
+        // 服务方法返回CompletableFuture时，等其完成后再写回响应；异常完成时也写回失败响应，客户端不必等到超时
+        future.whenComplete((response, e) -> {
+            // 请求结束（含异步方法完成）后归还许可，并把从收到请求起的耗时反馈给自适应限流器
+            rateLimit.release(System.nanoTime() - startNanos);
+            if (e != null || response == null) {
+                log.error("处理请求时发生异常，接口: {}, 方法: {}", request.getInterfaceName(), request.getMethodName(), e);
+                writeResponse(ctx, request, RpcResponse.fail("方法执行错误"));
+            } else {
+                writeResponse(ctx, request, response);
+            }
+        });
+    }
+
+    private void writeResponse(ChannelHandlerContext ctx, RpcRequest request, RpcResponse response) {
+        // 带回请求ID，客户端在复用的连接上据此匹配响应；连接保持不关闭
+        response.setRequestId(request.getRequestId());
+        // 非IO线程调用时，netty会把写操作提交到该channel所属的EventLoop上执行
+        ctx.writeAndFlush(response);
     }
 
     @Override
@@ -43,29 +94,34 @@ public class NettyRpcServerHandler extends SimpleChannelInboundHandler<RpcReques
         ctx.close();
     }
 
-    private RpcResponse getResponse(RpcRequest rpcRequest) {
-        //得到服务名
+    private CompletableFuture<RpcResponse> invoke(RpcRequest rpcRequest) {
         String interfaceName = rpcRequest.getInterfaceName();
-
-        //接口限流降级
-        RateLimit rateLimit = serviceProvider.getRateLimitProvider().getRateLimit(interfaceName);
-        if (!rateLimit.getToken()) {
-            //如果获取令牌失败，进行限流降级，快速返回结果
-            log.warn("服务限流，接口: {}", interfaceName);
-            return RpcResponse.fail("服务限流，接口 " + interfaceName + " 当前无法处理请求。请稍后再试。");
+        //查找注册时预先构建的方法调用器
+        MethodInvoker invoker = serviceProvider.getInvoker(interfaceName, rpcRequest.getMethodName(), rpcRequest.getParamsType());
+        if (invoker == null) {
+            log.error("未找到服务方法，接口: {}, 方法: {}", interfaceName, rpcRequest.getMethodName());
+            return CompletableFuture.completedFuture(RpcResponse.serviceError("方法执行错误"));
         }
-
-        //得到服务端相应服务实现类
-        Object service = serviceProvider.getService(interfaceName);
-        //反射调用方法
-        Method method;
         try {
-            method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamsType());
-            Object invoke = method.invoke(service, rpcRequest.getParams());
-            return RpcResponse.sussess(invoke);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            log.error("方法执行错误，接口: {}, 方法: {}", interfaceName, rpcRequest.getMethodName(), e);
-            return RpcResponse.fail("方法执行错误");
+            Object invoke = invoker.invoke(rpcRequest.getParams());
+            if (invoke instanceof CompletionStage) {
+                // 异步服务方法：结果就绪后再组装响应
+                return ((CompletionStage<?>) invoke).toCompletableFuture().handle((data, e) -> {
+                    if (e != null) {
+                        log.error("异步方法执行错误，接口: {}, 方法: {}", interfaceName, rpcRequest.getMethodName(), MethodInvoker.unwrap(e));
+                        return RpcResponse.serviceError("方法执行错误");
+                    }
+                    return RpcResponse.sussess(data);
+                });
+            }
+            return CompletableFuture.completedFuture(RpcResponse.sussess(invoke));
+        } catch (IllegalArgumentException | ClassCastException | WrongMethodTypeException e) {
+            // 请求中的参数与方法签名不符，调用没有进入服务方法
+            log.error("方法参数不匹配，接口: {}, 方法: {}", interfaceName, rpcRequest.getMethodName(), e);
+            return CompletableFuture.completedFuture(RpcResponse.serviceError("方法执行错误"));
+        } catch (Exception e) {
+            log.error("方法执行错误，接口: {}, 方法: {}", interfaceName, rpcRequest.getMethodName(), MethodInvoker.unwrap(e));
+            return CompletableFuture.completedFuture(RpcResponse.serviceError("方法执行错误"));
         }
     }
 }
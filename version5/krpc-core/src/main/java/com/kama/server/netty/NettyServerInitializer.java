@@ -1,33 +1,59 @@
 package com.kama.server.netty;
 
 
+import com.kama.KRpcApplication;
+import com.kama.config.KRpcConfig;
 import common.serializer.mycoder.MyDecoder;
 import common.serializer.mycoder.MyEncoder;
 import common.serializer.myserializer.Serializer;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import lombok.AllArgsConstructor;
+import io.netty.handler.timeout.IdleStateHandler;
 import com.kama.server.provider.ServiceProvider;
 
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * @ClassName NettyServerInitializer
  * @Description 服务端初始化器
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:55
+ * @LastChangeDate 2024-12-17 19:00
  * @Version v5.0
  */
-@AllArgsConstructor
 public class NettyServerInitializer extends ChannelInitializer<SocketChannel> {
     private ServiceProvider serviceProvider;
+    //所有连接共享的连接管理器
+    private final ServerConnectionHandler connectionHandler;
+
+    public NettyServerInitializer(ServiceProvider serviceProvider) {
+        this.serviceProvider = serviceProvider;
+        this.connectionHandler = new ServerConnectionHandler(KRpcApplication.getRpcConfig().getMaxServerConnections());
+    }
 
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
+        //超出最大连接数的连接直接重置，不安装任何处理器
+        if (!connectionHandler.tryAccept(ch)) {
+            return;
+        }
         ChannelPipeline pipeline = ch.pipeline();
+        KRpcConfig config = KRpcApplication.getRpcConfig();
+        //连接长期保持，超过空闲时间没有收到请求或心跳时由连接管理器关闭
+        if (config.getServerIdleTimeoutSeconds() > 0) {
+            pipeline.addLast(new IdleStateHandler(config.getServerIdleTimeoutSeconds(), 0, 0, TimeUnit.SECONDS));
+        }
         //使用自定义的编/解码器
-        pipeline.addLast(new MyEncoder(Serializer.getSerializerByCode(3)));
-        pipeline.addLast(new MyDecoder());
+        pipeline.addLast(new MyEncoder(getSerializer(), config.getProtocolVersion().byteValue()));
+        pipeline.addLast(new MyDecoder(config.getMaxFrameLength()));
+        pipeline.addLast(connectionHandler);
         pipeline.addLast(new NettyRpcServerHandler(serviceProvider));
     }
+
+    //按配置选择序列化器，未知名称时使用Hessian
+    private Serializer getSerializer() {
+        Serializer serializer = Serializer.getSerializerByName(KRpcApplication.getRpcConfig().getSerializer());
+        return serializer != null ? serializer : Serializer.getSerializerByCode(3);
+    }
 }
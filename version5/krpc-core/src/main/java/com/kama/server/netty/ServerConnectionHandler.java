@@ -0,0 +1,113 @@
+package com.kama.server.netty;
+
+import com.kama.metric.RpcMetrics;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName ServerConnectionHandler
+ * @Description 服务端连接管理：限制最大连接数、关闭空闲连接、统计每个连接上的请求数
+ * 超出最大连接数的连接在注册时由初始化器调用 tryAccept 拒绝，不安装任何处理器
+ * 所有连接共享一个实例；放在解码器之后，每收到一个请求计数一次
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 19:00
+ * @Version v5.0
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class ServerConnectionHandler extends ChannelInboundHandlerAdapter {
+    //当前连接数
+    public static final String ACTIVE_CONNECTIONS = "rpc.server.connections.active";
+    //因超出最大连接数被拒绝的连接
+    public static final String REFUSED_CONNECTIONS = "rpc.server.connections.refused";
+    //因空闲被关闭的连接
+    public static final String IDLE_CLOSED_CONNECTIONS = "rpc.server.connections.idleClosed";
+    //单个连接上的请求数，指标名后接对端地址
+    public static final String CHANNEL_REQUESTS_PREFIX = "rpc.server.channel.requests.";
+
+    private static final AttributeKey<Boolean> ACCEPTED = AttributeKey.valueOf("krpc.accepted");
+    private static final AttributeKey<String> REQUEST_METRIC = AttributeKey.valueOf("krpc.requestMetric");
+    private static final AttributeKey<LongAdder> REQUEST_COUNTER = AttributeKey.valueOf("krpc.requestCounter");
+
+    private final int maxConnections;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    public ServerConnectionHandler(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * 新连接注册时调用，超出上限返回false并立即关闭连接
+     * 此时还没有安装编解码器，被拒绝的连接不会读取任何数据；SO_LINGER 为0时关闭发送RST，
+     * 客户端立即感知连接被重置，不会把它当作可用连接，连接池按退避时间重连
+     */
+    public boolean tryAccept(SocketChannel ch) {
+        if (activeConnections.incrementAndGet() > maxConnections) {
+            activeConnections.decrementAndGet();
+            RpcMetrics.increment(REFUSED_CONNECTIONS);
+            log.warn("连接数已达上限 {}，拒绝连接: {}", maxConnections, ch.remoteAddress());
+            ch.config().setSoLinger(0);
+            ch.close();
+            return false;
+        }
+        ch.attr(ACCEPTED).set(Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        RpcMetrics.increment(ACTIVE_CONNECTIONS);
+        String metricName = CHANNEL_REQUESTS_PREFIX + ctx.channel().remoteAddress();
+        ctx.channel().attr(REQUEST_METRIC).set(metricName);
+        ctx.channel().attr(REQUEST_COUNTER).set(RpcMetrics.counter(metricName));
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 只有被接纳的连接才计入连接数
+        if (ctx.channel().attr(ACCEPTED).getAndSet(null) != null) {
+            activeConnections.decrementAndGet();
+        }
+        String metricName = ctx.channel().attr(REQUEST_METRIC).getAndSet(null);
+        if (metricName != null) {
+            RpcMetrics.add(ACTIVE_CONNECTIONS, -1);
+            RpcMetrics.remove(metricName);
+            ctx.channel().attr(REQUEST_COUNTER).set(null);
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        LongAdder counter = ctx.channel().attr(REQUEST_COUNTER).get();
+        if (counter != null) {
+            counter.increment();
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            // 长时间未收到请求或心跳，对端可能已失联
+            RpcMetrics.increment(IDLE_CLOSED_CONNECTIONS);
+            log.info("连接空闲超时，关闭连接: {}", ctx.channel().remoteAddress());
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+}
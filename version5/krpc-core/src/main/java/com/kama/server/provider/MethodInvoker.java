@@ -0,0 +1,93 @@
+package com.kama.server.provider;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @ClassName MethodInvoker
+ * @Description 服务方法调用器
+ * 注册服务时把接口方法解析为 MethodHandle，绑定服务实例并展开参数数组，
+ * 统一成 (Object[])Object 的形状后以 invokeExact 调用，省去每次请求的方法查找、访问检查
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 18:30
+ * @Version v5.0
+ */
+public final class MethodInvoker {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Method method;
+    private final Class<?>[] paramsType;
+    private final MethodHandle handle;
+
+    private MethodInvoker(Method method, MethodHandle handle) {
+        this.method = method;
+        this.paramsType = method.getParameterTypes();
+        this.handle = handle;
+    }
+
+    /**
+     * 为服务实例上的接口方法创建调用器
+     * 通过接口方法解析，调用时仍按实现类动态分派
+     */
+    public static MethodInvoker of(Object service, Method method) throws IllegalAccessException {
+        // 接口或实现类非 public 时也能访问
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method)
+                .bindTo(service)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+        return new MethodInvoker(method, handle);
+    }
+
+    /**
+     * 调用服务方法，服务方法抛出的 Exception 与 Error 原样抛出（不包装为 InvocationTargetException）
+     * 参数个数或类型与方法不符时抛出 IllegalArgumentException、ClassCastException 或 WrongMethodTypeException
+     */
+    public Object invoke(Object[] params) throws Exception {
+        try {
+            return (Object) handle.invokeExact(params == null ? NO_ARGS : params);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // 服务方法抛出了自定义的 Throwable 子类，包装后交给调用方
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * 取出服务方法真正抛出的异常：去掉 InvocationTargetException 与异步方法的 CompletionException 包装
+     */
+    public static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof InvocationTargetException || cause instanceof CompletionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    // 参数类型与请求中的参数类型一致
+    boolean matches(Class<?>[] requestParamsType) {
+        if (requestParamsType == null) {
+            return paramsType.length == 0;
+        }
+        if (requestParamsType.length != paramsType.length) {
+            return false;
+        }
+        for (int i = 0; i < paramsType.length; i++) {
+            if (paramsType[i] != requestParamsType[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,119 @@
+package com.kama.server.provider;
+
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import common.serializer.mycoder.MyDecoder;
+import common.serializer.mycoder.MyEncoder;
+import common.serializer.myserializer.Serializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName ProviderWarmer
+ * @Description 服务注册前的本地预热：用服务接口的每个方法构造请求与响应，在内存通道中反复经过编解码器并查找方法调用器，
+ * 让这些路径在接收真实流量前被 JIT 编译；不调用业务方法，避免产生副作用
+ * 参数使用各类型的零值、空字符串或无参构造的实例（部分序列化器不支持 null 参数）
+ * 预热失败只记录日志，不影响服务注册
+ * @Author Tong
+ * @LastChangeDate 2024-12-16 10:00
+ * @Version v5.0
+ */
+@Slf4j
+public class ProviderWarmer {
+    private final ServiceInvokers serviceInvokers;
+    private final Serializer serializer;
+    private final int iterations;
+
+    public ProviderWarmer(ServiceInvokers serviceInvokers, Serializer serializer, int iterations) {
+        this.serviceInvokers = serviceInvokers;
+        this.serializer = serializer;
+        this.iterations = iterations;
+    }
+
+    public void warmUp(Class<?> interfaceClass) {
+        if (iterations <= 0 || serializer == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        EmbeddedChannel channel = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+        try {
+            for (int i = 0; i < iterations; i++) {
+                for (Method method : interfaceClass.getMethods()) {
+                    if (Modifier.isStatic(method.getModifiers())) {
+                        continue;
+                    }
+                    RpcRequest request = RpcRequest.builder()
+                            .interfaceName(interfaceClass.getName())
+                            .methodName(method.getName())
+                            .paramsType(method.getParameterTypes())
+                            .params(sampleParams(method.getParameterTypes()))
+                            .requestId(i)
+                            .build();
+                    RpcRequest decoded = roundTrip(channel, request);
+                    serviceInvokers.get(decoded.getInterfaceName(), decoded.getMethodName(), decoded.getParamsType());
+                    RpcResponse response = RpcResponse.sussess(method.getName());
+                    response.setRequestId(i);
+                    roundTrip(channel, response);
+                }
+            }
+            log.info("服务{}本地预热完成，{}轮，耗时{}ms", interfaceClass.getName(), iterations,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("服务{}本地预热失败，跳过预热", interfaceClass.getName(), e);
+        } finally {
+            try {
+                channel.finishAndReleaseAll();
+            } catch (Exception e) {
+                log.debug("关闭预热通道时出现异常", e);
+            }
+        }
+    }
+
+    //构造预热用的参数
+    private Object[] sampleParams(Class<?>[] paramsType) {
+        Object[] params = new Object[paramsType.length];
+        for (int i = 0; i < paramsType.length; i++) {
+            params[i] = sampleValue(paramsType[i]);
+        }
+        return params;
+    }
+
+    private Object sampleValue(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return 0;
+        } else if (type == long.class || type == Long.class) {
+            return 0L;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return false;
+        } else if (type == double.class || type == Double.class) {
+            return 0.0d;
+        } else if (type == float.class || type == Float.class) {
+            return 0.0f;
+        } else if (type == short.class || type == Short.class) {
+            return (short) 0;
+        } else if (type == byte.class || type == Byte.class) {
+            return (byte) 0;
+        } else if (type == char.class || type == Character.class) {
+            return 'a';
+        } else if (type == String.class) {
+            return "";
+        }
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    //编码后再解码，返回解码得到的消息
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(EmbeddedChannel channel, T message) {
+        channel.writeOutbound(message);
+        channel.writeInbound((Object) channel.readOutbound());
+        return (T) channel.readInbound();
+    }
+}
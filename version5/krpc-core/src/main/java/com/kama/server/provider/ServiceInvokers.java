@@ -0,0 +1,67 @@
+package com.kama.server.provider;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName ServiceInvokers
+ * @Description 服务方法调用表：接口名 -> 方法名 -> 各重载的调用器
+ * 在注册服务时一次性构建，请求到来时只做两次哈希查找和参数类型比对
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 14:20
+ * @Version v5.0
+ */
+@Slf4j
+public class ServiceInvokers {
+    private static final MethodInvoker[] EMPTY = new MethodInvoker[0];
+
+    private final Map<String, Map<String, MethodInvoker[]>> invokerTable = new ConcurrentHashMap<>();
+
+    /**
+     * 为服务实例实现的接口构建全部方法的调用器
+     */
+    public void register(Class<?> interfaceClass, Object service) {
+        Map<String, MethodInvoker[]> methods = new ConcurrentHashMap<>();
+        for (Method method : interfaceClass.getMethods()) {
+            // 接口的静态方法不属于服务实例
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            try {
+                MethodInvoker invoker = MethodInvoker.of(service, method);
+                // 同名重载放在同一数组中，调用时按参数类型区分
+                methods.merge(method.getName(), new MethodInvoker[]{invoker}, ServiceInvokers::concat);
+            } catch (IllegalAccessException | RuntimeException e) {
+                log.error("创建服务方法调用器失败，接口: {}, 方法: {}", interfaceClass.getName(), method.getName(), e);
+            }
+        }
+        invokerTable.put(interfaceClass.getName(), methods);
+    }
+
+    /**
+     * 查找调用器，没有对应的接口或方法时返回 null
+     */
+    public MethodInvoker get(String interfaceName, String methodName, Class<?>[] paramsType) {
+        Map<String, MethodInvoker[]> methods = invokerTable.get(interfaceName);
+        if (methods == null) {
+            return null;
+        }
+        for (MethodInvoker invoker : methods.getOrDefault(methodName, EMPTY)) {
+            if (invoker.matches(paramsType)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
+
+    private static MethodInvoker[] concat(MethodInvoker[] a, MethodInvoker[] b) {
+        MethodInvoker[] result = new MethodInvoker[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
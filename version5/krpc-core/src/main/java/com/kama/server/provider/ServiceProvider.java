@@ -1,10 +1,14 @@
 package com.kama.server.provider;
 
 
+import com.kama.KRpcApplication;
+import com.kama.config.KRpcConfig;
+import com.kama.server.executor.ExecutorProvider;
 import com.kama.server.ratelimit.provider.RateLimitProvider;
 
 import com.kama.server.serviceRegister.ServiceRegister;
 import com.kama.server.serviceRegister.impl.ZKServiceRegister;
+import common.serializer.myserializer.Serializer;
 
 
 import java.net.InetSocketAddress;
@@ -16,11 +20,13 @@ import java.util.Map;
  * @ClassName ServiceProvider
  * @Description 本地注册中心
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:21
+ * @LastChangeDate 2024-12-18 11:30
  * @Version v5.0
  */
 public class ServiceProvider {
     private Map<String, Object> interfaceProvider;
+    //服务方法调用表
+    private final ServiceInvokers serviceInvokers = new ServiceInvokers();
 
     private int port;
     private String host;
@@ -28,14 +34,25 @@ public class ServiceProvider {
     private ServiceRegister serviceRegister;
     //限流器
     private RateLimitProvider rateLimitProvider;
+    //业务线程池
+    private ExecutorProvider executorProvider;
+    //注册前的本地预热
+    private ProviderWarmer providerWarmer;
 
     public ServiceProvider(String host, int port) {
+        this(host, port, KRpcApplication.getRpcConfig(), new ZKServiceRegister());
+    }
+
+    public ServiceProvider(String host, int port, KRpcConfig config, ServiceRegister serviceRegister) {
         //需要传入服务端自身的网络地址
         this.host = host;
         this.port = port;
         this.interfaceProvider = new HashMap<>();
-        this.serviceRegister = new ZKServiceRegister();
-        this.rateLimitProvider = new RateLimitProvider();
+        this.serviceRegister = serviceRegister;
+        this.rateLimitProvider = new RateLimitProvider(config);
+        this.executorProvider = new ExecutorProvider(config);
+        this.providerWarmer = new ProviderWarmer(serviceInvokers, getSerializer(config),
+                config.getLocalWarmupIterations());
     }
 
     public void provideServiceInterface(Object service) {
@@ -45,16 +62,35 @@ public class ServiceProvider {
         for (Class<?> clazz : interfaceName) {
             //本机的映射表
             interfaceProvider.put(clazz.getName(), service);
+            //预先构建方法调用器，请求时不再反射查找方法
+            serviceInvokers.register(clazz, service);
+            //注册前预热编解码与方法查找，注册后才会有客户端的流量
+            providerWarmer.warmUp(clazz);
             //在注册中心注册服务
             serviceRegister.register(clazz, new InetSocketAddress(host, port));
         }
     }
 
+    //按配置选择序列化器，未知名称时使用Hessian，与服务端编码器一致
+    private Serializer getSerializer(KRpcConfig config) {
+        Serializer serializer = Serializer.getSerializerByName(config.getSerializer());
+        return serializer != null ? serializer : Serializer.getSerializerByCode(3);
+    }
+
     public Object getService(String interfaceName) {
         return interfaceProvider.get(interfaceName);
     }
 
+    //查找服务方法的调用器，不存在时返回 null
+    public MethodInvoker getInvoker(String interfaceName, String methodName, Class<?>[] paramsType) {
+        return serviceInvokers.get(interfaceName, methodName, paramsType);
+    }
+
     public RateLimitProvider getRateLimitProvider() {
         return rateLimitProvider;
     }
+
+    public ExecutorProvider getExecutorProvider() {
+        return executorProvider;
+    }
 }
@@ -5,11 +5,15 @@ package com.kama.server.ratelimit;
  * @InterfaceName RateLimit
  * @Description 限流接口
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:50
+ * @LastChangeDate 2024-12-14 10:30
  * @Version v5.0
  */
 
 public interface RateLimit {
     //获取访问许可
     boolean getToken();
+
+    //请求处理结束，归还许可并反馈本次处理耗时（纳秒）；getToken 成功的请求都会调用一次
+    default void release(long latencyNanos) {
+    }
 }
@@ -3,58 +3,91 @@ package com.kama.server.ratelimit.impl;
 import com.kama.server.ratelimit.RateLimit;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * @ClassName TokenBucketRateLimitImpl
  * @Description 全局限流
+ * 无锁令牌桶：桶内令牌数与时间戳合并为一个 long，即"桶被取空的时刻"（相对创建时刻的纳秒数）。
+ * 当前令牌数 = (now - 取空时刻) / 每个令牌的纳秒数，最多为桶容量；取令牌就是把取空时刻后移一个令牌间隔，
+ * 通过一次 CAS 完成。令牌按纳秒连续补充，支持亚毫秒级的生成间隔，拒绝时不写共享状态
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:53
+ * @LastChangeDate 2024-12-13 18:00
  * @Version v5.0
  */
 
 @Slf4j
 public class TokenBucketRateLimitImpl implements RateLimit {
 
-    // 令牌产生速率（单位：ms）
-    private final int rate;
+    // 生成一个令牌的间隔（纳秒）
+    private final long nanosPerToken;
     // 桶容量
     private final int capacity;
-    // 当前桶容量
-    private volatile int curCapacity;
-    // 上次请求时间戳
-    private volatile long lastTimestamp;
+    // 装满整个桶所需的时间（纳秒）
+    private final long burstNanos;
+    // 计时起点，状态中保存相对它的时间，避免 nanoTime 为负值时的比较问题
+    private final long startNanos;
+    // 桶被取空的时刻（相对 startNanos）
+    private final AtomicLong emptyAt;
 
+    /**
+     * @param rate     令牌产生速率（单位：ms，每 rate 毫秒产生一个令牌）
+     * @param capacity 桶容量
+     */
     public TokenBucketRateLimitImpl(int rate, int capacity) {
-        this.rate = rate;
+        this(TimeUnit.MILLISECONDS.toNanos(rate), capacity);
+    }
+
+    private TokenBucketRateLimitImpl(long nanosPerToken, int capacity) {
+        if (nanosPerToken <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("令牌间隔与桶容量必须大于0");
+        }
+        this.nanosPerToken = nanosPerToken;
         this.capacity = capacity;
-        this.curCapacity = capacity;
-        this.lastTimestamp = System.currentTimeMillis();
+        this.burstNanos = Math.multiplyExact(nanosPerToken, (long) capacity);
+        this.startNanos = System.nanoTime();
+        // 初始为满桶
+        this.emptyAt = new AtomicLong(-burstNanos);
+    }
+
+    /**
+     * 按每秒令牌数创建，可表示每毫秒多于一个令牌的速率
+     */
+    public static TokenBucketRateLimitImpl perSecond(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("每秒令牌数必须大于0");
+        }
+        long nanosPerToken = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        return new TokenBucketRateLimitImpl(nanosPerToken, capacity);
     }
 
     @Override
     public boolean getToken() {
-        // 优化：同步仅限于关键部分，减少锁竞争
-        synchronized (this) {
-            // 如果当前桶还有剩余，就直接返回
-            if (curCapacity > 0) {
-                curCapacity--;
-                return true;
+        long now = System.nanoTime() - startNanos;
+        while (true) {
+            long current = emptyAt.get();
+            // 空闲过久时桶已满，多出的令牌丢弃
+            long next = Math.max(current, now - burstNanos) + nanosPerToken;
+            if (next > now) {
+                return false;  // 桶中不足一个令牌
             }
-
-            long currentTimestamp = System.currentTimeMillis();
-            // 如果距离上一次请求的时间大于 RATE 的时间间隔
-            if (currentTimestamp - lastTimestamp >= rate) {
-                // 计算这段时间内生成的令牌数量
-                int generatedTokens = (int) ((currentTimestamp - lastTimestamp) / rate);
-                if (generatedTokens > 1) {
-                    // 只添加剩余令牌，确保不会超过桶的容量
-                    curCapacity = Math.min(capacity, curCapacity + generatedTokens - 1);
-                }
-                // 更新时间戳
-                lastTimestamp = currentTimestamp;
+            if (emptyAt.compareAndSet(current, next)) {
                 return true;
             }
-            return false;  // 如果无法获取令牌，返回 false
         }
     }
+
+    // 当前可用令牌数，仅用于观测
+    public int availableTokens() {
+        long now = System.nanoTime() - startNanos;
+        long tokens = (now - emptyAt.get()) / nanosPerToken;
+        return (int) Math.min(capacity, Math.max(0, tokens));
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket(nanosPerToken=" + nanosPerToken + ", capacity=" + capacity + ")";
+    }
 }
@@ -0,0 +1,143 @@
+package com.kama.server.ratelimit.impl;
+
+import com.kama.metric.RpcMetrics;
+import com.kama.server.ratelimit.RateLimit;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @ClassName VegasConcurrencyLimitImpl
+ * @Description 自适应并发限流（TCP Vegas 思路）
+ * 限制同时处理的请求数而非速率。以观测到的最小耗时作为无排队耗时，
+ * 估算排队请求数 queue = limit * (1 - minRtt / rtt)：排队少则上调上限，排队多则下调，
+ * 上限随机器能力和下游状况自动收敛。调整幅度按 log10(limit) 缩放
+ * @Author Tong
+ * @LastChangeDate 2024-12-14 10:30
+ * @Version v5.0
+ */
+@Slf4j
+public class VegasConcurrencyLimitImpl implements RateLimit {
+    //指标名前缀，后接限流对象名
+    public static final String METRIC_PREFIX = "rpc.server.limit.";
+
+    private final int maxLimit;
+    //在途请求数
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //被拒绝的请求数
+    private final LongAdder rejected = new LongAdder();
+    //更新上限的锁，拿不到时跳过本次样本，不阻塞业务线程
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    //当前并发上限
+    private volatile int limit;
+    //以下字段只在持有 updateLock 时读写
+    private double estimatedLimit;
+    //无排队时的耗时估计（纳秒）
+    private long minRttNanos = Long.MAX_VALUE;
+    //距离下次重新探测最小耗时还剩的样本数
+    private long probeCountdown;
+
+    public VegasConcurrencyLimitImpl(String name, int initialLimit, int maxLimit) {
+        if (initialLimit <= 0 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("并发上限配置非法: initial=" + initialLimit + ", max=" + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.probeCountdown = nextProbeCountdown(initialLimit);
+        RpcMetrics.gauge(METRIC_PREFIX + name + ".limit", () -> limit);
+        RpcMetrics.gauge(METRIC_PREFIX + name + ".inflight", inFlight::get);
+        RpcMetrics.gauge(METRIC_PREFIX + name + ".rejected", rejected::sum);
+    }
+
+    @Override
+    public boolean getToken() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release(long latencyNanos) {
+        // 归还前的在途数，用于判断上限是否被用满
+        int inFlightBefore = inFlight.getAndDecrement();
+        if (latencyNanos <= 0 || !updateLock.tryLock()) {
+            return;
+        }
+        try {
+            update(latencyNanos, inFlightBefore);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlightBefore) {
+        // 定期丢弃最小耗时重新探测，适应服务本身变慢（如数据量增长）的情况
+        if (--probeCountdown <= 0) {
+            minRttNanos = rttNanos;
+            probeCountdown = nextProbeCountdown(limit);
+            return;
+        }
+        if (rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+            return;
+        }
+        double current = estimatedLimit;
+        // 上限未用满时（受调用量限制而非处理能力），耗时反映不出排队情况，不做调整，避免空闲期上限无限增长
+        if (inFlightBefore * 2 < current) {
+            return;
+        }
+        int queueSize = (int) Math.ceil(current * (1 - (double) minRttNanos / rttNanos));
+        double step = Math.max(1, Math.log10(current));
+        double next;
+        if (queueSize <= step) {
+            // 几乎无排队，较快上调
+            next = current + 6 * step;
+        } else if (queueSize < 3 * step) {
+            next = current + step;
+        } else if (queueSize > 6 * step) {
+            next = current - step;
+        } else {
+            return;
+        }
+        estimatedLimit = Math.max(1, Math.min(maxLimit, next));
+        int newLimit = (int) estimatedLimit;
+        if (newLimit != limit) {
+            log.debug("并发上限调整: {} -> {}，minRtt={}ns，rtt={}ns", limit, newLimit, minRttNanos, rttNanos);
+            limit = newLimit;
+        }
+    }
+
+    //上限越大，探测间隔的样本数越多；加随机量避免多个限流器同时探测
+    private static long nextProbeCountdown(int limit) {
+        return (long) limit * ThreadLocalRandom.current().nextInt(100, 200);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "VegasConcurrencyLimit(limit=" + limit + ", max=" + maxLimit + ")";
+    }
+}
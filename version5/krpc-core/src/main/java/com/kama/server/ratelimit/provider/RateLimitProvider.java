@@ -1,7 +1,9 @@
 package com.kama.server.ratelimit.provider;
 
+import com.kama.config.KRpcConfig;
 import com.kama.server.ratelimit.RateLimit;
 import com.kama.server.ratelimit.impl.TokenBucketRateLimitImpl;
+import com.kama.server.ratelimit.impl.VegasConcurrencyLimitImpl;
 import lombok.extern.slf4j.Slf4j;
 
 
@@ -11,24 +13,93 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * @ClassName RateLimitProvider
  * @Description 提供限流器
+ * 限流粒度为接口或方法：方法单独指定了限流器时使用方法的，否则使用所在接口的
+ * 未指定时按配置为接口创建默认限流器：固定速率令牌桶或按延迟自适应的并发限流
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:54
+ * @LastChangeDate 2024-12-14 10:30
  * @Version v5.0
  */
 @Slf4j
 public class RateLimitProvider {
-    private final Map<String, RateLimit> rateLimitMap = new ConcurrentHashMap<>();
+    //key: 接口名，value: 该接口及其方法的限流器
+    private final Map<String, ServiceRateLimits> rateLimitMap = new ConcurrentHashMap<>();
 
     // 默认的限流桶容量和令牌生成速率
     private static final int DEFAULT_CAPACITY = 10;
     private static final int DEFAULT_RATE = 100;
 
-    // 提供限流实例
+    public static final String TOKEN_BUCKET = "tokenbucket";
+    public static final String VEGAS = "vegas";
+
+    //默认限流方式
+    private final String rateLimitType;
+    //vegas的初始及最大并发上限
+    private final int initialConcurrencyLimit;
+    private final int maxConcurrencyLimit;
+
+    public RateLimitProvider() {
+        this(new KRpcConfig());
+    }
+
+    public RateLimitProvider(KRpcConfig config) {
+        this.rateLimitType = config.getRateLimitType();
+        this.initialConcurrencyLimit = config.getConcurrencyLimitInitial();
+        this.maxConcurrencyLimit = config.getConcurrencyLimitMax();
+    }
+
+    // 提供接口级限流实例
     public RateLimit getRateLimit(String interfaceName) {
+        return getServiceRateLimits(interfaceName).interfaceLimit;
+    }
+
+    // 提供方法级限流实例，方法未单独指定时返回接口的限流器
+    public RateLimit getRateLimit(String interfaceName, String methodName) {
+        ServiceRateLimits limits = getServiceRateLimits(interfaceName);
+        RateLimit rateLimit = limits.methodLimits.get(methodName);
+        return rateLimit != null ? rateLimit : limits.interfaceLimit;
+    }
+
+    // 为接口指定限流器，覆盖默认策略
+    public void setRateLimit(String interfaceName, RateLimit rateLimit) {
+        getServiceRateLimits(interfaceName).interfaceLimit = rateLimit;
+        log.info("为接口 [{}] 指定了限流策略: {}", interfaceName, rateLimit);
+    }
+
+    // 为方法单独指定限流器，同名重载共用
+    public void setRateLimit(String interfaceName, String methodName, RateLimit rateLimit) {
+        getServiceRateLimits(interfaceName).methodLimits.put(methodName, rateLimit);
+        log.info("为接口 [{}] 的方法 [{}] 指定了限流策略: {}", interfaceName, methodName, rateLimit);
+    }
+
+    private ServiceRateLimits getServiceRateLimits(String interfaceName) {
+        ServiceRateLimits limits = rateLimitMap.get(interfaceName);
+        if (limits != null) {
+            return limits;
+        }
         return rateLimitMap.computeIfAbsent(interfaceName, key -> {
-            RateLimit rateLimit = new TokenBucketRateLimitImpl(DEFAULT_RATE, DEFAULT_CAPACITY);
+            RateLimit rateLimit = createDefaultRateLimit(interfaceName);
             log.info("为接口 [{}] 创建了新的限流策略: {}", interfaceName, rateLimit);
-            return rateLimit;
+            return new ServiceRateLimits(rateLimit);
         });
     }
+
+    private RateLimit createDefaultRateLimit(String interfaceName) {
+        if (VEGAS.equalsIgnoreCase(rateLimitType)) {
+            return new VegasConcurrencyLimitImpl(interfaceName, initialConcurrencyLimit, maxConcurrencyLimit);
+        }
+        if (!TOKEN_BUCKET.equalsIgnoreCase(rateLimitType)) {
+            log.warn("未知的限流方式: {}，使用令牌桶", rateLimitType);
+        }
+        return new TokenBucketRateLimitImpl(DEFAULT_RATE, DEFAULT_CAPACITY);
+    }
+
+    // 一个接口的限流器
+    private static class ServiceRateLimits {
+        private volatile RateLimit interfaceLimit;
+        private final Map<String, RateLimit> methodLimits = new ConcurrentHashMap<>();
+
+        private ServiceRateLimits(RateLimit interfaceLimit) {
+            this.interfaceLimit = interfaceLimit;
+        }
+    }
 }
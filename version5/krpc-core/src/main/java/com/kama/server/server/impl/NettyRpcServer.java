@@ -1,9 +1,10 @@
 package com.kama.server.server.impl;
 
+import com.kama.KRpcApplication;
+import com.kama.transport.NettyTransport;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
@@ -16,7 +17,7 @@ import com.kama.server.server.RpcServer;
  * @ClassName NettyRpcServer
  * @Description Netty服务端
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:25
+ * @LastChangeDate 2024-12-12 17:10
  * @Version v5.0
  */
 @Slf4j
@@ -30,15 +31,18 @@ public class NettyRpcServer implements RpcServer {
 
     @Override
     public void start(int port) {
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-        NioEventLoopGroup workGroup = new NioEventLoopGroup();
+        //传输实现（nio/epoll/io_uring）由配置决定，原生传输不可用时回退为nio
+        NettyTransport transport = NettyTransport.create(KRpcApplication.getRpcConfig());
+        //只监听一个端口，boss线程一个即可
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(1);
+        EventLoopGroup workGroup = transport.newEventLoopGroup(0);
         log.info("Netty服务端启动了");
 
         try {
             ServerBootstrap serverBootstrap = new ServerBootstrap();
             serverBootstrap.group(bossGroup, workGroup)
-                    .channel(NioServerSocketChannel.class)
                     .childHandler(new NettyServerInitializer(serviceProvider));
+            transport.configure(serverBootstrap);
 
             // 同步阻塞，绑定端口启动服务
             channelFuture = serverBootstrap.bind(port).sync();
@@ -51,6 +55,7 @@ public class NettyRpcServer implements RpcServer {
             log.error("Netty服务端启动中断：{}", e.getMessage(), e);
         } finally {
             shutdown(bossGroup, workGroup);  // 集中管理线程组资源
+            serviceProvider.getExecutorProvider().shutdown();
             log.info("Netty服务端关闭了");
         }
     }
@@ -70,7 +75,7 @@ public class NettyRpcServer implements RpcServer {
         }
     }
 
-    private void shutdown(NioEventLoopGroup bossGroup, NioEventLoopGroup workGroup) {
+    private void shutdown(EventLoopGroup bossGroup, EventLoopGroup workGroup) {
         if (bossGroup != null) {
             bossGroup.shutdownGracefully().syncUninterruptibly();
         }
@@ -17,7 +17,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * @ClassName SimpleRpcServer
  * @Description 简单服务端
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:23
+ * @LastChangeDate 2024-12-13 10:30
  * @Version v5.0
  */
 @AllArgsConstructor
@@ -36,7 +36,13 @@ public class SimpleRpcServer implements RpcServer {
             while (running.get()) {
                 try {
                     Socket socket = serverSocket.accept();
-                    new Thread(new WorkThread(socket, serviceProvider)).start();
+                    WorkThread workThread = new WorkThread(socket, serviceProvider);
+                    if (serviceProvider.getExecutorProvider().isVirtual()) {
+                        // 每个连接一个虚拟线程，阻塞读写不占用平台线程
+                        Thread.ofVirtual().name("rpc-simple-virtual").start(workThread);
+                    } else {
+                        new Thread(workThread).start();
+                    }
                 } catch (IOException e) {
                     if (running.get()) { // 如果不是因为服务器被停止导致的异常
                         log.error("接受连接时发生异常：{}", e.getMessage(), e);
@@ -4,20 +4,20 @@ package com.kama.server.server.work;
 import common.message.RpcRequest;
 import common.message.RpcResponse;
 import lombok.AllArgsConstructor;
+import com.kama.server.provider.MethodInvoker;
 import com.kama.server.provider.ServiceProvider;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.Socket;
+import java.util.concurrent.CompletionStage;
 
 /**
  * @ClassName WorkThread
  * @Description
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:22
+ * @LastChangeDate 2024-12-17 22:00
  * @Version v5.0
  */
 @AllArgsConstructor
@@ -45,17 +45,21 @@ public class WorkThread implements Runnable {
     private RpcResponse getResponse(RpcRequest rpcRequest) {
         //得到服务名
         String interfaceName = rpcRequest.getInterfaceName();
-        //得到服务端相应服务实现类
-        Object service = serviceProvide.getService(interfaceName);
-        //反射调用方法
-        Method method;
+        //查找注册时预先构建的方法调用器
+        MethodInvoker invoker = serviceProvide.getInvoker(interfaceName, rpcRequest.getMethodName(), rpcRequest.getParamsType());
+        if (invoker == null) {
+            return RpcResponse.serviceError("方法执行错误");
+        }
         try {
-            method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamsType());
-            Object invoke = method.invoke(service, rpcRequest.getParams());
+            Object invoke = invoker.invoke(rpcRequest.getParams());
+            if (invoke instanceof CompletionStage) {
+                //阻塞式服务端，直接等待异步方法的结果
+                invoke = ((CompletionStage<?>) invoke).toCompletableFuture().join();
+            }
             return RpcResponse.sussess(invoke);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            e.printStackTrace();
-            return RpcResponse.fail("方法执行错误");
+        } catch (Exception e) {
+            MethodInvoker.unwrap(e).printStackTrace();
+            return RpcResponse.serviceError("方法执行错误");
         }
     }
 }
@@ -1,6 +1,9 @@
 package com.kama.server.serviceRegister.impl;
 
+import com.kama.KRpcApplication;
 import com.kama.annotation.Retryable;
+import com.kama.config.KRpcConfig;
+import common.message.ProviderMetadata;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
@@ -11,16 +14,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.kama.server.serviceRegister.ServiceRegister;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @ClassName ZKServiceRegister
  * @Description zk服务注册中心
+ * 地址节点的数据为本提供者的元数据（JSON，如权重、启动时间与预热时长），客户端据此按权重分配请求
  * @Author Tong
- * @LastChangeDate 2024-12-02 10:28
+ * @LastChangeDate 2024-12-16 10:00
  * @Version v5.0
  */
 @Slf4j
@@ -28,8 +34,15 @@ public class ZKServiceRegister implements ServiceRegister {
     private CuratorFramework client;
     private static final String ROOT_PATH = "MyRPC";
     private static final String RETRY = "CanRetry";
+    //发布到地址节点上的元数据
+    private final ProviderMetadata metadata;
 
     public ZKServiceRegister() {
+        KRpcConfig config = KRpcApplication.getRpcConfig();
+        int weight = config.getWeight();
+        //启动时间取 JVM 启动时间，JIT 从此时开始预热
+        this.metadata = (weight > 0 ? new ProviderMetadata(weight) : ProviderMetadata.ofLocalHost())
+                .withWarmup(ManagementFactory.getRuntimeMXBean().getStartTime(), TimeUnit.SECONDS.toMillis(config.getWarmupSeconds()));
         RetryPolicy policy = new ExponentialBackoffRetry(1000, 3);
         this.client = CuratorFrameworkFactory.builder()
                 .connectString("127.0.0.1:2181")
@@ -52,10 +65,12 @@ public class ZKServiceRegister implements ServiceRegister {
 
             String path = "/" + serviceName + "/" + getServiceAddress(serviceAddress);
             if (client.checkExists().forPath(path) == null) {
-                client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path);
-                log.info("服务地址 {} 注册成功", path);
+                client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, metadata.toBytes());
+                log.info("服务地址 {} 注册成功，元数据 {}", path, metadata);
             } else {
-                log.info("服务地址 {} 已经存在，跳过注册", path);
+                //节点已存在时更新元数据
+                client.setData().forPath(path, metadata.toBytes());
+                log.info("服务地址 {} 已经存在，更新元数据 {}", path, metadata);
             }
 
             // 注册白名单
@@ -76,7 +91,8 @@ public class ZKServiceRegister implements ServiceRegister {
     }
 
     private String getServiceAddress(InetSocketAddress serverAddress) {
-        return serverAddress.getHostName() + ":" + serverAddress.getPort();
+        //getHostString 直接返回配置的主机名或IP，不做反向解析
+        return serverAddress.getHostString() + ":" + serverAddress.getPort();
     }
 
     // 判断一个方法是否加了Retryable注解
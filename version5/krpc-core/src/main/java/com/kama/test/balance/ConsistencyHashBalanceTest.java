@@ -1,11 +1,16 @@
 package com.kama.test.balance;
 
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
 import com.kama.client.servicecenter.balance.impl.ConsistencyHashBalance;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -13,7 +18,7 @@ import static org.junit.Assert.*;
  * @ClassName ConsistencyHashBalanceTest
  * @Description 一致性哈希测试类
  * @Author Tong
- * @LastChangeDate 2024-12-05 15:39
+ * @LastChangeDate 2024-12-17 10:00
  * @Version v5.0
  */
 public class ConsistencyHashBalanceTest {
@@ -97,4 +102,114 @@ public class ConsistencyHashBalanceTest {
         // 测试虚拟节点的数量
         assertEquals("Virtual nodes count should be 5", 5, ConsistencyHashBalance.getVirtualNum());
     }
+
+    // 创建带有给定地址的服务快照，服务名每次不同，避免与其他用例共享缓存
+    private ServiceCache newServiceCache(String serviceName, int count) {
+        ServiceCache cache = new ServiceCache();
+        cache.setListener(balance::onSnapshotChanged);
+        for (int i = 0; i < count; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (9000 + i));
+        }
+        return cache;
+    }
+
+    @Test
+    public void testSameKeySameEndpoint() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceSnapshot snapshot = newServiceCache(serviceName, 3).getSnapshot(serviceName);
+        Endpoint first = balance.select(snapshot, 42);
+        for (int i = 0; i < 100; i++) {
+            assertSame(first, balance.select(snapshot, 42));
+        }
+        // 无哈希键时随机选择，结果一定是快照中的地址
+        assertTrue(snapshot.contains(balance.select(snapshot).getAddress()));
+    }
+
+    @Test
+    public void testOnlyKeysOfRemovedEndpointMove() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceCache cache = newServiceCache(serviceName, 5);
+        ServiceSnapshot before = cache.getSnapshot(serviceName);
+        Map<Integer, Endpoint> routes = new HashMap<>();
+        for (int key = 0; key < 1000; key++) {
+            routes.put(key, balance.select(before, key));
+        }
+
+        cache.delete(serviceName, "127.0.0.1:9002");
+        ServiceSnapshot after = cache.getSnapshot(serviceName);
+        int moved = 0;
+        for (int key = 0; key < 1000; key++) {
+            Endpoint endpoint = balance.select(after, key);
+            assertNotEquals("127.0.0.1:9002", endpoint.getAddress());
+            if (!routes.get(key).getAddress().equals("127.0.0.1:9002")) {
+                // 原本不在被移除地址上的键保持不变
+                assertEquals(routes.get(key), endpoint);
+            } else {
+                moved++;
+            }
+        }
+        assertTrue("removed endpoint should own some keys", moved > 0);
+    }
+
+    @Test
+    public void testKeysSpreadAcrossEndpoints() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceSnapshot snapshot = newServiceCache(serviceName, 4).getSnapshot(serviceName);
+        Map<Endpoint, Integer> counts = new HashMap<>();
+        for (int key = 0; key < 10000; key++) {
+            counts.merge(balance.select(snapshot, "user-" + key), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("each endpoint should own a fair share of keys: " + counts, count > 1000 && count < 4000);
+        }
+    }
+
+    @Test
+    public void testRingFollowsNewSnapshot() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceCache cache = newServiceCache(serviceName, 1);
+        assertEquals("127.0.0.1:9000", balance.select(cache.getSnapshot(serviceName), 7).getAddress());
+        cache.addServiceToCache(serviceName, "127.0.0.1:9001");
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        boolean newEndpointUsed = false;
+        for (int key = 0; key < 1000 && !newEndpointUsed; key++) {
+            newEndpointUsed = balance.select(snapshot, key).getAddress().equals("127.0.0.1:9001");
+        }
+        assertTrue("new endpoint should join the ring", newEndpointUsed);
+    }
+
+    @Test
+    public void testExcludedEndpointFailsOverClockwise() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceSnapshot snapshot = newServiceCache(serviceName, 3).getSnapshot(serviceName);
+        Endpoint owner = balance.select(snapshot, 42);
+        Endpoint next = balance.select(snapshot, 42, endpoint -> endpoint == owner);
+        assertNotNull(next);
+        assertNotSame(owner, next);
+        // 排除后同一个键仍稳定地落到同一个地址
+        for (int i = 0; i < 100; i++) {
+            assertSame(next, balance.select(snapshot, 42, endpoint -> endpoint == owner));
+        }
+        // 全部被排除时返回 null
+        assertNull(balance.select(snapshot, 42, endpoint -> true));
+    }
+
+    @Test
+    public void testFilteredSnapshotDoesNotStick() {
+        String serviceName = "test.HashService" + System.nanoTime();
+        ServiceCache cache = newServiceCache(serviceName, 3);
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Endpoint removed = snapshot.getEndpoint(0);
+        // 过滤后的快照版本号比原快照新，切换回原快照后被过滤的地址应重新参与选择
+        ServiceSnapshot filtered = cache.exclude(snapshot, endpoint -> endpoint == removed);
+        for (int key = 0; key < 1000; key++) {
+            assertNotSame(removed, balance.select(filtered, key));
+        }
+        boolean removedUsed = false;
+        for (int key = 0; key < 1000 && !removedUsed; key++) {
+            removedUsed = balance.select(snapshot, key) == removed;
+        }
+        assertTrue("endpoint should return after the filter is lifted", removedUsed);
+    }
 }
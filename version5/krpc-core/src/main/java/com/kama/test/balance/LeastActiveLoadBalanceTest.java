@@ -0,0 +1,78 @@
+package com.kama.test.balance;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.LoadBalance;
+import com.kama.client.servicecenter.balance.LoadBalanceFactory;
+import com.kama.client.servicecenter.balance.impl.LeastActiveLoadBalance;
+import com.kama.config.KRpcConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName LeastActiveLoadBalanceTest
+ * @Description 最少活跃数负载均衡器测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 14:00
+ * @Version v5.0
+ */
+public class LeastActiveLoadBalanceTest {
+
+    private LeastActiveLoadBalance loadBalance;
+    private ServiceSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        loadBalance = new LeastActiveLoadBalance();
+        // 缓存是进程内共享的，每个用例使用不同的服务名
+        String serviceName = "test.LeastActiveService" + System.nanoTime();
+        ServiceCache cache = new ServiceCache();
+        for (int i = 0; i < 3; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (9100 + i));
+        }
+        snapshot = cache.getSnapshot(serviceName);
+    }
+
+    @Test
+    public void testSelectLeastActive() {
+        // 前两个地址各有在途请求，只有第三个空闲
+        snapshot.getEndpoint(0).getStats().beginRequest();
+        snapshot.getEndpoint(1).getStats().beginRequest();
+        snapshot.getEndpoint(1).getStats().beginRequest();
+        for (int i = 0; i < 100; i++) {
+            assertSame(snapshot.getEndpoint(2), loadBalance.select(snapshot));
+        }
+        // 请求完成后计数回落，第一个地址与第三个并列
+        snapshot.getEndpoint(0).getStats().endRequest();
+        assertEquals(0, snapshot.getEndpoint(0).getStats().getActive());
+        assertNotSame(snapshot.getEndpoint(1), loadBalance.select(snapshot));
+    }
+
+    @Test
+    public void testTiesBrokenRandomly() {
+        Set<Endpoint> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            chosen.add(loadBalance.select(snapshot));
+        }
+        assertEquals("all idle endpoints should be chosen", 3, chosen.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWithEmptySnapshot() {
+        loadBalance.select(ServiceSnapshot.EMPTY);
+    }
+
+    @Test
+    public void testCreateFromConfig() {
+        KRpcConfig config = new KRpcConfig();
+        config.setLoadBalance("leastactive");
+        LoadBalance created = LoadBalanceFactory.create(config);
+        assertTrue(created instanceof LeastActiveLoadBalance);
+    }
+}
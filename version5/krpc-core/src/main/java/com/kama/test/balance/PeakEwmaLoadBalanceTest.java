@@ -0,0 +1,95 @@
+package com.kama.test.balance;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.EndpointStats;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.impl.PeakEwmaLoadBalance;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName PeakEwmaLoadBalanceTest
+ * @Description peak-EWMA 两次随机选择负载均衡器测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-15 18:00
+ * @Version v5.0
+ */
+public class PeakEwmaLoadBalanceTest {
+
+    private PeakEwmaLoadBalance loadBalance;
+    private ServiceCache cache;
+    private String serviceName;
+
+    @Before
+    public void setUp() {
+        loadBalance = new PeakEwmaLoadBalance();
+        cache = new ServiceCache();
+        // 缓存是进程内共享的，每个用例使用不同的服务名
+        serviceName = "test.PeakEwmaService" + System.nanoTime();
+    }
+
+    private ServiceSnapshot snapshotOf(int count) {
+        for (int i = 0; i < count; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (9200 + i));
+        }
+        return cache.getSnapshot(serviceName);
+    }
+
+    @Test
+    public void testPeakTakenImmediately() {
+        EndpointStats stats = snapshotOf(1).getEndpoint(0).getStats();
+        stats.observe(TimeUnit.MILLISECONDS.toNanos(1));
+        stats.observe(TimeUnit.MILLISECONDS.toNanos(100));
+        double ewma = stats.getEwmaNanos(System.nanoTime());
+        assertTrue("a slower sample should raise the ewma at once: " + ewma, ewma > TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void testStaleStatsDecay() {
+        EndpointStats stats = snapshotOf(1).getEndpoint(0).getStats();
+        stats.observe(TimeUnit.MILLISECONDS.toNanos(100));
+        long now = System.nanoTime();
+        double later = stats.getEwmaNanos(now + TimeUnit.SECONDS.toNanos(60));
+        assertTrue("ewma should decay without new samples", later < stats.getEwmaNanos(now) / 100);
+    }
+
+    @Test
+    public void testAvoidSlowEndpoint() {
+        ServiceSnapshot snapshot = snapshotOf(2);
+        Endpoint slow = snapshot.getEndpoint(0);
+        Endpoint fast = snapshot.getEndpoint(1);
+        slow.getStats().observe(TimeUnit.MILLISECONDS.toNanos(50));
+        fast.getStats().observe(TimeUnit.MILLISECONDS.toNanos(1));
+        // 只有两个地址时每次都比较这两个，总是选择代价较小的
+        for (int i = 0; i < 100; i++) {
+            assertSame(fast, loadBalance.select(snapshot));
+        }
+        // 在途请求多到一定程度后，较快的地址代价反而更高
+        for (int i = 0; i < 100; i++) {
+            fast.getStats().beginRequest();
+        }
+        assertSame(slow, loadBalance.select(snapshot));
+    }
+
+    @Test
+    public void testTwoDistinctChoices() {
+        ServiceSnapshot snapshot = snapshotOf(3);
+        Set<Endpoint> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            chosen.add(loadBalance.select(snapshot));
+        }
+        assertEquals("idle endpoints should all be chosen", 3, chosen.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWithEmptySnapshot() {
+        loadBalance.select(ServiceSnapshot.EMPTY);
+    }
+}
@@ -1,12 +1,16 @@
 package com.kama.test.balance;
 
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
 import com.kama.client.servicecenter.balance.impl.RandomLoadBalance;
+import common.message.ProviderMetadata;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -14,7 +18,7 @@ import static org.junit.Assert.assertTrue;
  * @ClassName RandomLoadBalanceTest
  * @Description 随机负载均衡器测试
  * @Author Tong
- * @LastChangeDate 2024-12-05 15:43
+ * @LastChangeDate 2024-12-17 21:00
  * @Version v5.0
  */
 public class RandomLoadBalanceTest {
@@ -73,4 +77,37 @@ public class RandomLoadBalanceTest {
         String selectedServer = loadBalance.balance(addressList);
         assertFalse(addressList.contains("server4"));
     }
+
+    @Test
+    public void testSelect_WarmingEndpointGetsLessTraffic() {
+        // 预热进行到一半的地址权重为 50，预热结束的为 100，约 1/3 的请求落到预热中的地址
+        String serviceName = "test.RandomService" + System.nanoTime();
+        ServiceCache cache = new ServiceCache();
+        cache.addServiceToCache(serviceName, "127.0.0.1:9400", new ProviderMetadata(9));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9401",
+                new ProviderMetadata(9).withWarmup(System.currentTimeMillis() - 30000, 60000));
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        assertEquals(3333, countSelections(snapshot, "127.0.0.1:9401", 10000), 300);
+    }
+
+    @Test
+    public void testSelect_IgnoresPublishedWeight() {
+        // 发布的权重（默认为处理器数）不影响随机，各地址等概率
+        String serviceName = "test.RandomService" + System.nanoTime();
+        ServiceCache cache = new ServiceCache();
+        cache.addServiceToCache(serviceName, "127.0.0.1:9400", new ProviderMetadata(1));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9401", new ProviderMetadata(9));
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        assertEquals(5000, countSelections(snapshot, "127.0.0.1:9401", 10000), 300);
+    }
+
+    private int countSelections(ServiceSnapshot snapshot, String address, int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            if (loadBalance.select(snapshot).getAddress().equals(address)) {
+                count++;
+            }
+        }
+        return count;
+    }
 }
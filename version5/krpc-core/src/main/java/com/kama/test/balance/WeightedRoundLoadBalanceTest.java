@@ -0,0 +1,134 @@
+package com.kama.test.balance;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.servicecenter.balance.impl.WeightedRoundLoadBalance;
+import common.message.ProviderMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName WeightedRoundLoadBalanceTest
+ * @Description 平滑加权轮询负载均衡器测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 15:00
+ * @Version v5.0
+ */
+public class WeightedRoundLoadBalanceTest {
+
+    private WeightedRoundLoadBalance loadBalance;
+    private ServiceCache cache;
+    private String serviceName;
+
+    @Before
+    public void setUp() {
+        loadBalance = new WeightedRoundLoadBalance();
+        cache = new ServiceCache();
+        cache.setListener(loadBalance::onSnapshotChanged);
+        // 缓存是进程内共享的，每个用例使用不同的服务名
+        serviceName = "test.WeightedService" + System.nanoTime();
+    }
+
+    private Map<String, Integer> countSelections(int times) {
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < times; i++) {
+            counts.merge(loadBalance.select(snapshot).getAddress(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Test
+    public void testSelectionProportionalToWeight() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(8));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9301", new ProviderMetadata(32));
+        // 整轮的整数倍，各地址的次数严格与权重成正比
+        Map<String, Integer> counts = countSelections(400);
+        assertEquals(Integer.valueOf(80), counts.get("127.0.0.1:9300"));
+        assertEquals(Integer.valueOf(320), counts.get("127.0.0.1:9301"));
+    }
+
+    @Test
+    public void testSelectionIsSmooth() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(5));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9301", new ProviderMetadata(1));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9302", new ProviderMetadata(1));
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        // 平滑加权轮询的一个周期为 a a b a c a a，周期首尾相接处权重为 5 的地址最多连续被选中 4 次
+        int run = 0;
+        int maxRun = 0;
+        Endpoint previous = null;
+        for (int i = 0; i < 70; i++) {
+            Endpoint endpoint = loadBalance.select(snapshot);
+            run = endpoint.equals(previous) ? run + 1 : 1;
+            maxRun = Math.max(maxRun, run);
+            previous = endpoint;
+        }
+        assertTrue("heavy endpoint should be interleaved, max run " + maxRun, maxRun <= 4);
+    }
+
+    @Test
+    public void testScheduleRebuiltOnWeightChange() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(1));
+        cache.addServiceToCache(serviceName, "127.0.0.1:9301", new ProviderMetadata(1));
+        assertEquals(Integer.valueOf(50), countSelections(100).get("127.0.0.1:9300"));
+
+        // 提供者修改权重，快照版本变化，选择序列随之重建
+        long version = cache.getSnapshot(serviceName).getVersion();
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(3));
+        assertTrue(cache.getSnapshot(serviceName).getVersion() > version);
+        assertEquals(Integer.valueOf(75), countSelections(100).get("127.0.0.1:9300"));
+    }
+
+    @Test
+    public void testSameMetadataKeepsSnapshot() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(4));
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(4));
+        assertSame(snapshot, cache.getSnapshot(serviceName));
+    }
+
+    @Test
+    public void testParseMetadata() {
+        assertEquals(32, ProviderMetadata.parse(new ProviderMetadata(32).toBytes()).getWeight());
+        assertEquals(16, ProviderMetadata.parse("{\"weight\":16,\"zone\":\"a\"}".getBytes(StandardCharsets.UTF_8)).getWeight());
+        // 旧版本提供者没有节点数据，或数据不是 JSON，使用默认权重
+        assertSame(ProviderMetadata.DEFAULT, ProviderMetadata.parse(null));
+        assertSame(ProviderMetadata.DEFAULT, ProviderMetadata.parse(new byte[0]));
+        assertSame(ProviderMetadata.DEFAULT, ProviderMetadata.parse("127.0.0.1".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, new ProviderMetadata(0).getWeight());
+        // 旧提供者的默认权重与未配置权重的提供者发布的权重一致
+        assertEquals(ProviderMetadata.ofLocalHost().getWeight(), ProviderMetadata.DEFAULT.getWeight());
+    }
+
+    @Test
+    public void testEffectiveWeightRampsDuringWarmup() {
+        long now = System.currentTimeMillis();
+        ProviderMetadata metadata = new ProviderMetadata(100).withWarmup(now - 15000, 60000);
+        assertTrue(metadata.isWarmingUp(now));
+        assertEquals(25, metadata.getEffectiveWeight(now));
+        assertEquals(1, metadata.getEffectiveWeight(now - 15000));
+        assertEquals(100, metadata.getEffectiveWeight(now + 45000));
+        // 没有启动时间的旧版本提供者不预热
+        assertEquals(100, new ProviderMetadata(100).getEffectiveWeight(now));
+        assertEquals(metadata, ProviderMetadata.parse(metadata.toBytes()));
+    }
+
+    @Test
+    public void testWarmingEndpointGetsReducedShare() {
+        long now = System.currentTimeMillis();
+        cache.addServiceToCache(serviceName, "127.0.0.1:9300", new ProviderMetadata(10));
+        // 刚启动 10%，有效权重为 1
+        cache.addServiceToCache(serviceName, "127.0.0.1:9301", new ProviderMetadata(10).withWarmup(now - 6000, 60000));
+        Map<String, Integer> counts = countSelections(1100);
+        assertEquals(Integer.valueOf(1000), counts.get("127.0.0.1:9300"));
+        assertEquals(Integer.valueOf(100), counts.get("127.0.0.1:9301"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.kama.test.cache;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import common.message.ProviderMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName ServiceCacheTest
+ * @Description 本地服务缓存测试类
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 14:00
+ * @Version v5.0
+ */
+public class ServiceCacheTest {
+
+    private ServiceCache cache;
+    // 缓存是进程内共享的，每个用例使用不同的服务名
+    private String serviceName;
+
+    @Before
+    public void setUp() {
+        cache = new ServiceCache();
+        serviceName = "test.Service" + System.nanoTime();
+    }
+
+    @Test
+    public void testSnapshotIsImmutableAndVersioned() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:8001");
+        ServiceSnapshot first = cache.getSnapshot(serviceName);
+        cache.addServiceToCache(serviceName, "127.0.0.1:8002");
+        ServiceSnapshot second = cache.getSnapshot(serviceName);
+
+        assertEquals(Arrays.asList("127.0.0.1:8001"), first.getAddressList());
+        assertEquals(Arrays.asList("127.0.0.1:8001", "127.0.0.1:8002"), second.getAddressList());
+        assertTrue(second.getVersion() > first.getVersion());
+    }
+
+    @Test
+    public void testEndpointResolvedOnce() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:8001");
+        Endpoint endpoint = cache.getSnapshot(serviceName).getEndpoint(0);
+        assertEquals("127.0.0.1", endpoint.getHost());
+        assertEquals(8001, endpoint.getPort());
+        assertFalse(endpoint.getSocketAddress().isUnresolved());
+        // 之后的快照复用同一个 Endpoint 实例
+        cache.addServiceToCache(serviceName, "127.0.0.1:8002");
+        assertSame(endpoint, cache.getSnapshot(serviceName).findEndpoint("127.0.0.1:8001"));
+    }
+
+    @Test
+    public void testMalformedAddressIgnored() {
+        cache.addServiceToCache(serviceName, "no-port");
+        assertTrue(cache.getSnapshot(serviceName).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListFromCacheIsReadOnly() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:8001");
+        cache.getServiceListFromCache(serviceName).add("127.0.0.1:8002");
+    }
+
+    @Test
+    public void testReplaceAndDelete() {
+        cache.addServiceToCache(serviceName, "127.0.0.1:8001");
+        cache.addServiceToCache(serviceName, "127.0.0.1:8002");
+        cache.replaceServiceAddress(serviceName, "127.0.0.1:8001", "127.0.0.1:8003");
+        assertEquals(Arrays.asList("127.0.0.1:8002", "127.0.0.1:8003"), cache.getServiceListFromCache(serviceName));
+
+        cache.delete(serviceName, "127.0.0.1:8002");
+        cache.delete(serviceName, "127.0.0.1:8003");
+        assertTrue(cache.getSnapshot(serviceName).isEmpty());
+        assertTrue(cache.getServiceListFromCache(serviceName).isEmpty());
+    }
+
+    @Test
+    public void testPutServiceListKeepsKnownMetadata() {
+        // 监听线程已写入带元数据的地址
+        cache.addServiceToCache(serviceName, "127.0.0.1:8001", new ProviderMetadata(32));
+        Endpoint endpoint = cache.getSnapshot(serviceName).findEndpoint("127.0.0.1:8001");
+
+        // 只有地址列表时，已有地址的元数据不被默认值覆盖
+        cache.putServiceList(serviceName, Arrays.asList("127.0.0.1:8001", "127.0.0.1:8002"));
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        assertEquals(32, snapshot.getMetadata(snapshot.indexOf("127.0.0.1:8001")).getWeight());
+        assertSame(ProviderMetadata.DEFAULT, snapshot.getMetadata(snapshot.indexOf("127.0.0.1:8002")));
+        assertSame(endpoint, snapshot.findEndpoint("127.0.0.1:8001"));
+
+        // 从注册中心读到的元数据优先，不在列表中的地址被移除
+        Map<String, ProviderMetadata> providers = new LinkedHashMap<>();
+        providers.put("127.0.0.1:8002", new ProviderMetadata(8));
+        cache.putServiceList(serviceName, providers);
+        snapshot = cache.getSnapshot(serviceName);
+        assertEquals(Arrays.asList("127.0.0.1:8002"), snapshot.getAddressList());
+        assertEquals(8, snapshot.getMetadata(0).getWeight());
+    }
+
+    @Test
+    public void testConcurrentReadDuringUpdates() throws InterruptedException {
+        cache.addServiceToCache(serviceName, "127.0.0.1:8000");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    // 迭代期间列表被修改会抛出 ConcurrentModificationException
+                    List<String> addresses = cache.getServiceListFromCache(serviceName);
+                    for (String address : addresses) {
+                        assertNotNull(address);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 1; i < 20000; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (10000 + i));
+            cache.delete(serviceName, "127.0.0.1:" + (10000 + i - 1));
+        }
+        running.set(false);
+        reader.join();
+        assertNull("reader should never fail: " + failure.get(), failure.get());
+    }
+}
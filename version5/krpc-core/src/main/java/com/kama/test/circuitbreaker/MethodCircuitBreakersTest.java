@@ -0,0 +1,127 @@
+package com.kama.test.circuitbreaker;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.circuitbreaker.CircuitBreaker;
+import com.kama.client.circuitbreaker.CircuitBreakerProvider;
+import com.kama.client.circuitbreaker.MethodCircuitBreakers;
+import com.kama.config.KRpcConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName MethodCircuitBreakersTest
+ * @Description 按地址和方法签名区分的熔断器测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 23:00
+ * @Version v5.0
+ */
+public class MethodCircuitBreakersTest {
+
+    // 同名的重载方法
+    interface OverloadedService {
+        String query(Integer id);
+
+        String query(String name);
+    }
+
+    // 另一个接口的同名方法
+    interface OtherService {
+        String query(Integer id);
+    }
+
+    // 用于地址下线的用例，服务名即接口名
+    interface PrunedService {
+        String query(Integer id);
+    }
+
+    private CircuitBreakerProvider provider;
+    private ServiceSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        KRpcConfig config = new KRpcConfig();
+        config.setCircuitBreakerMinimumRequests(5);
+        provider = new CircuitBreakerProvider(config);
+        String serviceName = "test.BreakerService" + System.nanoTime();
+        ServiceCache cache = new ServiceCache();
+        for (int i = 0; i < 2; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (9500 + i));
+        }
+        snapshot = cache.getSnapshot(serviceName);
+    }
+
+    @Test
+    public void testSignatureDistinguishesOverloadsAndInterfaces() throws NoSuchMethodException {
+        Method byId = OverloadedService.class.getMethod("query", Integer.class);
+        Method byName = OverloadedService.class.getMethod("query", String.class);
+        Method other = OtherService.class.getMethod("query", Integer.class);
+        assertEquals(OverloadedService.class.getName() + "#query(java.lang.Integer)",
+                provider.getCircuitBreakers(byId).getSignature());
+        assertNotSame(provider.getCircuitBreakers(byId), provider.getCircuitBreakers(byName));
+        assertNotSame(provider.getCircuitBreakers(byId), provider.getCircuitBreakers(other));
+        // 同一个 Method 复用同一组熔断器
+        assertSame(provider.getCircuitBreakers(byId), provider.getCircuitBreakers(byId));
+
+        Endpoint endpoint = snapshot.getEndpoint(0);
+        CircuitBreaker breaker = provider.getCircuitBreakers(byId).get(endpoint);
+        for (int i = 0; i < 5; i++) {
+            breaker.recordFailure();
+        }
+        assertFalse(breaker.allowRequest());
+        // 重载方法与其他接口的同名方法不受影响
+        assertTrue(provider.getCircuitBreakers(byName).get(endpoint).allowRequest());
+        assertTrue(provider.getCircuitBreakers(other).get(endpoint).allowRequest());
+    }
+
+    @Test
+    public void testBreakersAreKeyedByEndpoint() throws NoSuchMethodException {
+        MethodCircuitBreakers breakers = provider.getCircuitBreakers(OverloadedService.class.getMethod("query", Integer.class));
+        Endpoint broken = snapshot.getEndpoint(0);
+        Endpoint healthy = snapshot.getEndpoint(1);
+        assertSame(breakers.get(broken), breakers.get(broken));
+        assertNotSame(breakers.get(broken), breakers.get(healthy));
+        assertFalse(breakers.isRejecting(broken));
+
+        for (int i = 0; i < 5; i++) {
+            breakers.get(broken).recordFailure();
+        }
+        assertTrue(breakers.isRejecting(broken));
+        assertFalse(breakers.isRejecting(healthy));
+        assertTrue(breakers.get(healthy).allowRequest());
+    }
+
+    @Test
+    public void testBreakersPrunedWhenAddressRemoved() throws NoSuchMethodException {
+        String serviceName = PrunedService.class.getName();
+        ServiceCache cache = new ServiceCache();
+        cache.addListener(provider::onSnapshotChanged);
+        cache.addServiceToCache(serviceName, "127.0.0.1:9510");
+        cache.addServiceToCache(serviceName, "127.0.0.1:9511");
+        ServiceSnapshot current = cache.getSnapshot(serviceName);
+        MethodCircuitBreakers breakers = provider.getCircuitBreakers(PrunedService.class.getMethod("query", Integer.class));
+        Endpoint removed = current.findEndpoint("127.0.0.1:9510");
+        Endpoint kept = current.findEndpoint("127.0.0.1:9511");
+        CircuitBreaker removedBreaker = breakers.get(removed);
+        CircuitBreaker keptBreaker = breakers.get(kept);
+
+        cache.delete(serviceName, removed.getAddress());
+        // 下线地址的熔断器被清除，重新上线时创建新的熔断器；其余地址不受影响
+        assertNotSame(removedBreaker, breakers.get(removed));
+        assertSame(keptBreaker, breakers.get(kept));
+
+        // 其他服务的快照变化不影响本服务的熔断器
+        provider.onSnapshotChanged(snapshot);
+        assertSame(keptBreaker, breakers.get(kept));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoBreakerForNullEndpoint() throws NoSuchMethodException {
+        provider.getCircuitBreakers(OverloadedService.class.getMethod("query", Integer.class)).get(null);
+    }
+}
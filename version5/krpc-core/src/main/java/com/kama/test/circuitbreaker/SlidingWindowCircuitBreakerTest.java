@@ -0,0 +1,216 @@
+package com.kama.test.circuitbreaker;
+
+import com.kama.client.circuitbreaker.CircuitBreaker;
+import com.kama.client.circuitbreaker.CircuitBreakerState;
+import com.kama.client.circuitbreaker.impl.SlidingWindowCircuitBreaker;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName SlidingWindowCircuitBreakerTest
+ * @Description 滑动窗口熔断器测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-17 22:30
+ * @Version v5.0
+ */
+public class SlidingWindowCircuitBreakerTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // 窗口1秒分10个桶，至少10次调用，失败率50%，慢调用率80%（200ms），开启200ms，半开启放行3个
+    private SlidingWindowCircuitBreaker newBreaker() {
+        return new SlidingWindowCircuitBreaker("test", 1000, 10, 10, 0.5, 0.8, 200, 200, 3);
+    }
+
+    @Test
+    public void testStaysClosedBelowMinimumRequests() {
+        CircuitBreaker breaker = newBreaker();
+        // 不足最小请求数时，全部失败也不开启
+        for (int i = 0; i < 9; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 6; i++) {
+            breaker.recordSuccess();
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        // 10次调用4次失败，未达到50%
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        CircuitBreaker breaker = newBreaker();
+        breaker.recordSuccess(0);
+        breaker.recordSuccess(0);
+        for (int i = 0; i < 7; i++) {
+            breaker.recordSuccess(SLOW);
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        breaker.recordSuccess(SLOW);
+        // 10次调用8次慢调用，达到80%
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOldBucketsSlideOut() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 9; i++) {
+            breaker.recordFailure();
+        }
+        // 窗口滑过后之前的失败不再计入
+        Thread.sleep(1100);
+        for (int i = 0; i < 9; i++) {
+            breaker.recordSuccess();
+        }
+        breaker.recordFailure();
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenLimitsProbesAndCloses() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        Thread.sleep(250);
+        // 开启到期后只放行3个探测请求
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        for (int i = 0; i < 3; i++) {
+            breaker.recordSuccess();
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        // 关闭后窗口重新计数，之前的失败不计入
+        breaker.recordFailure();
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenFailureReopens() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        Thread.sleep(250);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testConcurrentHalfOpenPermits() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        Thread.sleep(250);
+        // 多线程同时检查，总共只放行3个
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        if (breaker.allowRequest()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(3, allowed.get());
+    }
+
+    @Test
+    public void testLateResultsFromEarlierPhaseIgnored() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        // 关闭状态下放行的请求，结果在进入半开启后才返回
+        Object closedPermission = breaker.acquirePermission();
+        assertNotNull(closedPermission);
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        Thread.sleep(250);
+        Object[] probes = new Object[3];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = breaker.acquirePermission();
+            assertNotNull(probes[i]);
+        }
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+        // 迟到的结果不计入本轮探测：成功不会使其关闭，失败也不会使其重新开启
+        for (int i = 0; i < 3; i++) {
+            breaker.recordSuccess(closedPermission, 0);
+        }
+        breaker.recordFailure(closedPermission, 0);
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+        for (Object probe : probes) {
+            breaker.recordSuccess(probe, 0);
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testStaleProbesAfterPermitsReissued() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        Thread.sleep(250);
+        Object stale = breaker.acquirePermission();
+        assertNotNull(stale);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        // 探测请求迟迟没有结果，许可到期后重新发放
+        Thread.sleep(250);
+        Object[] probes = new Object[3];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = breaker.acquirePermission();
+            assertNotNull(probes[i]);
+        }
+        // 上一轮探测的结果作废
+        breaker.recordFailure(stale, 0);
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+        for (Object probe : probes) {
+            breaker.recordSuccess(probe, 0);
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,229 @@
+package com.kama.test.codec;
+
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import common.serializer.mycoder.MyDecoder;
+import common.serializer.mycoder.MyEncoder;
+import common.serializer.mycoder.ProtocolHeader;
+import common.serializer.myserializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName ProtocolCodecTest
+ * @Description 编解码器测试：v1与v2帧的完整请求-响应往返、帧头状态码，以及消息体损坏时只影响对应的请求
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 10:30
+ * @Version v5.0
+ */
+public class ProtocolCodecTest {
+
+    private final Serializer serializer = Serializer.getSerializerByCode(3);
+
+    private static RpcRequest request(long requestId) {
+        return RpcRequest.builder()
+                .interfaceName("com.kama.service.UserService")
+                .methodName("getUserByUserId")
+                .params(new Object[]{(int) requestId})
+                .paramsType(new Class<?>[]{Integer.class})
+                .requestId(requestId)
+                .build();
+    }
+
+    //把一端写出的帧交给另一端读取
+    private static void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        ByteBuf frame;
+        while ((frame = from.readOutbound()) != null) {
+            to.writeInbound(frame);
+        }
+    }
+
+    //保留帧头与长度，把消息体改成无法解析的内容
+    private static ByteBuf corruptBody(ByteBuf frame, int headerLength) {
+        for (int i = frame.readerIndex() + headerLength; i < frame.writerIndex(); i++) {
+            frame.setByte(i, 0xFF);
+        }
+        return frame;
+    }
+
+    @Test
+    public void testV1RoundTrip() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer, ProtocolHeader.VERSION_1), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        client.writeOutbound(request(7));
+        client.writeOutbound(request(8));
+        ByteBuf first = client.readOutbound();
+        // v1帧以消息类型开头，没有魔数
+        assertFalse(ProtocolHeader.isV2(first, first.readerIndex()));
+        server.writeInbound(first);
+        transfer(client, server);
+
+        // v1帧头没有请求ID，服务端读到的请求ID为默认值
+        RpcRequest received1 = server.readInbound();
+        RpcRequest received2 = server.readInbound();
+        assertEquals(7, received1.getParams()[0]);
+        assertEquals(8, received2.getParams()[0]);
+
+        // 服务端按请求的版本回写，响应中同样没有请求ID
+        server.writeOutbound(RpcResponse.sussess("first"));
+        server.writeOutbound(RpcResponse.sussess("second"));
+        ByteBuf response = server.readOutbound();
+        assertFalse(ProtocolHeader.isV2(response, response.readerIndex()));
+        client.writeInbound(response);
+        transfer(server, client);
+
+        // 客户端按发送顺序回填请求ID
+        RpcResponse response1 = client.readInbound();
+        RpcResponse response2 = client.readInbound();
+        assertEquals(7, response1.getRequestId());
+        assertEquals("first", response1.getData());
+        assertEquals(8, response2.getRequestId());
+        assertEquals("second", response2.getData());
+
+        // 多出的响应不会被匹配到任何请求
+        server.writeOutbound(RpcResponse.sussess("extra"));
+        transfer(server, client);
+        RpcResponse extra = client.readInbound();
+        assertEquals(0, extra.getRequestId());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testV2RoundTrip() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        client.writeOutbound(request(42));
+        ByteBuf frame = client.readOutbound();
+        assertTrue(ProtocolHeader.isV2(frame, frame.readerIndex()));
+        server.writeInbound(frame);
+        RpcRequest received = server.readInbound();
+        assertEquals(42, received.getRequestId());
+
+        // 响应按帧头的请求ID匹配，顺序无关
+        RpcResponse failed = RpcResponse.fail("方法执行错误");
+        failed.setRequestId(received.getRequestId());
+        server.writeOutbound(failed);
+        transfer(server, client);
+        RpcResponse response = client.readInbound();
+        assertEquals(42, response.getRequestId());
+        assertEquals(500, response.getCode());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCorruptRequestBodyOnlyFailsThatRequest() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        client.writeOutbound(request(1));
+        client.writeOutbound(request(2));
+        server.writeInbound(corruptBody(client.readOutbound(), ProtocolHeader.V2_HEADER_LENGTH));
+        server.writeInbound((ByteBuf) client.readOutbound());
+
+        // 连接仍然可用，损坏帧之后的请求正常解码
+        assertTrue(server.isActive());
+        RpcRequest received = server.readInbound();
+        assertEquals(2, received.getRequestId());
+        assertNull(server.readInbound());
+
+        // 服务端为损坏的请求直接回写失败响应
+        transfer(server, client);
+        RpcResponse response = client.readInbound();
+        assertEquals(1, response.getRequestId());
+        assertEquals(400, response.getCode());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCorruptResponseBodyOnlyFailsThatRequest() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        RpcResponse first = RpcResponse.sussess("first");
+        first.setRequestId(1);
+        RpcResponse second = RpcResponse.sussess("second");
+        second.setRequestId(2);
+        server.writeOutbound(first);
+        server.writeOutbound(second);
+        client.writeInbound(corruptBody(server.readOutbound(), ProtocolHeader.V2_HEADER_LENGTH));
+        client.writeInbound((ByteBuf) server.readOutbound());
+
+        // 损坏的响应按帧头的请求ID转为失败响应，后续响应正常解码
+        assertTrue(client.isActive());
+        RpcResponse failed = client.readInbound();
+        assertEquals(1, failed.getRequestId());
+        assertEquals(500, failed.getCode());
+        RpcResponse response = client.readInbound();
+        assertEquals(2, response.getRequestId());
+        assertEquals("second", response.getData());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCorruptV1ResponseKeepsOrder() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer, ProtocolHeader.VERSION_1), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        client.writeOutbound(request(7));
+        client.writeOutbound(request(8));
+        transfer(client, server);
+        server.readInbound();
+        server.readInbound();
+
+        server.writeOutbound(RpcResponse.sussess("first"));
+        server.writeOutbound(RpcResponse.sussess("second"));
+        client.writeInbound(corruptBody(server.readOutbound(), ProtocolHeader.V1_HEADER_LENGTH));
+        transfer(server, client);
+
+        // 解析失败的响应仍然占用最早发出的请求，后续响应不会错位
+        RpcResponse failed = client.readInbound();
+        assertEquals(7, failed.getRequestId());
+        assertEquals(500, failed.getCode());
+        RpcResponse response = client.readInbound();
+        assertEquals(8, response.getRequestId());
+        assertEquals("second", response.getData());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testStatusInHeader() {
+        EmbeddedChannel client = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+        EmbeddedChannel server = new EmbeddedChannel(new MyEncoder(serializer), new MyDecoder());
+
+        client.writeOutbound(request(3));
+        ByteBuf requestFrame = client.readOutbound();
+        assertEquals(0, ProtocolHeader.status(requestFrame, requestFrame.readerIndex()));
+        requestFrame.release();
+
+        // 不反序列化消息体即可读到响应状态码
+        RpcResponse limited = RpcResponse.rateLimited("服务限流");
+        limited.setRequestId(3);
+        server.writeOutbound(limited);
+        ByteBuf responseFrame = server.readOutbound();
+        assertEquals(429, ProtocolHeader.status(responseFrame, responseFrame.readerIndex()));
+
+        // 消息体损坏时，按帧头的状态码完成对应的请求
+        client.writeInbound(corruptBody(responseFrame, ProtocolHeader.V2_HEADER_LENGTH));
+        RpcResponse response = client.readInbound();
+        assertEquals(3, response.getRequestId());
+        assertEquals(429, response.getCode());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+}
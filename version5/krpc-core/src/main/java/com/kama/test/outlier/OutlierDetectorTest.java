@@ -0,0 +1,185 @@
+package com.kama.test.outlier;
+
+import com.kama.client.cache.Endpoint;
+import com.kama.client.cache.ServiceCache;
+import com.kama.client.cache.ServiceSnapshot;
+import com.kama.client.outlier.OutlierDetector;
+import com.kama.config.KRpcConfig;
+import com.kama.metric.RpcMetrics;
+import common.message.RpcResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName OutlierDetectorTest
+ * @Description 异常实例检测测试
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 16:30
+ * @Version v5.0
+ */
+public class OutlierDetectorTest {
+
+    private ServiceCache cache;
+    private OutlierDetector detector;
+    private String serviceName;
+
+    @Before
+    public void setUp() {
+        KRpcConfig config = new KRpcConfig();
+        config.setOutlierConsecutiveFailures(3);
+        config.setOutlierBaseEjectionMillis(200);
+        config.setOutlierMaxEjectionMillis(1000);
+        config.setOutlierMaxEjectionPercent(50);
+        // 检测周期足够长，用例中只由调用结果触发摘除
+        config.setOutlierIntervalMillis(3600_000);
+        cache = new ServiceCache();
+        detector = new OutlierDetector(cache, config);
+        // 缓存是进程内共享的，每个用例使用不同的服务名
+        serviceName = "test.OutlierService" + System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            cache.addServiceToCache(serviceName, "127.0.0.1:" + (9300 + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        detector.close();
+    }
+
+    private void reportFailures(Endpoint endpoint, int times) {
+        for (int i = 0; i < times; i++) {
+            detector.reportResult(serviceName, endpoint, false);
+        }
+    }
+
+    @Test
+    public void testEjectAfterConsecutiveFailures() {
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Endpoint bad = snapshot.getEndpoint(0);
+        long ejections = RpcMetrics.get(OutlierDetector.METRIC_EJECTIONS);
+
+        reportFailures(bad, 2);
+        // 中间的成功使连续失败次数清零
+        detector.reportResult(serviceName, bad, true);
+        reportFailures(bad, 2);
+        assertSame(snapshot, detector.filter(snapshot));
+
+        reportFailures(bad, 1);
+        assertTrue(bad.getStats().isEjected(System.currentTimeMillis()));
+        assertEquals(ejections + 1, RpcMetrics.get(OutlierDetector.METRIC_EJECTIONS));
+
+        ServiceSnapshot filtered = detector.filter(snapshot);
+        assertEquals(3, filtered.size());
+        assertTrue(filtered.getVersion() != snapshot.getVersion());
+        for (int i = 0; i < filtered.size(); i++) {
+            assertNotSame(bad, filtered.getEndpoint(i));
+        }
+        // 摘除状态不变时复用同一个过滤结果
+        assertSame(filtered, detector.filter(snapshot));
+        // 缓存中的快照不受影响
+        assertEquals(4, cache.getSnapshot(serviceName).size());
+    }
+
+    @Test
+    public void testClientErrorsDoNotMoveEwmaOrEject() {
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Endpoint endpoint = snapshot.getEndpoint(0);
+        long rtt = TimeUnit.MILLISECONDS.toNanos(1);
+        long timeout = TimeUnit.SECONDS.toNanos(5);
+        endpoint.getStats().beginRequest();
+        detector.endRequest(serviceName, endpoint, RpcResponse.sussess("ok"), rtt, timeout);
+        endpoint.getStats().drainIntervalSuccesses();
+
+        // 业务异常与限流拒绝按实际耗时计入，不计为失败
+        for (int i = 0; i < 10; i++) {
+            endpoint.getStats().beginRequest();
+            detector.endRequest(serviceName, endpoint, RpcResponse.serviceError("方法执行错误"), rtt, timeout);
+            endpoint.getStats().beginRequest();
+            detector.endRequest(serviceName, endpoint, RpcResponse.rateLimited("服务限流"), rtt, timeout);
+        }
+        assertEquals(rtt, endpoint.getStats().getEwmaNanos(System.nanoTime()), rtt * 0.01);
+        assertEquals(0, endpoint.getStats().getActive());
+        assertEquals(0, endpoint.getStats().drainIntervalFailures());
+        assertFalse(endpoint.getStats().isEjected(System.currentTimeMillis()));
+        assertSame(snapshot, detector.filter(snapshot));
+
+        // 服务端5xx错误按不短于超时时间的耗时计入，并计为失败
+        endpoint.getStats().beginRequest();
+        detector.endRequest(serviceName, endpoint, RpcResponse.fail("服务端繁忙，请稍后再试"), rtt, timeout);
+        assertTrue(endpoint.getStats().getEwmaNanos(System.nanoTime()) > timeout / 2);
+        assertEquals(1, endpoint.getStats().drainIntervalFailures());
+    }
+
+    @Test
+    public void testMaxEjectionPercent() {
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        for (int i = 0; i < 4; i++) {
+            reportFailures(snapshot.getEndpoint(i), 3);
+        }
+        // 4个实例最多摘除50%
+        long now = System.currentTimeMillis();
+        int ejected = 0;
+        for (int i = 0; i < 4; i++) {
+            if (snapshot.getEndpoint(i).getStats().isEjected(now)) {
+                ejected++;
+            }
+        }
+        assertEquals(2, ejected);
+        assertEquals(2, detector.filter(snapshot).size());
+    }
+
+    @Test
+    public void testRestoreAndExponentialBackoff() throws InterruptedException {
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        Endpoint bad = snapshot.getEndpoint(1);
+        long restores = RpcMetrics.get(OutlierDetector.METRIC_RESTORES);
+
+        long before = System.currentTimeMillis();
+        reportFailures(bad, 3);
+        long firstDuration = bad.getStats().getEjectedUntil() - before;
+        assertTrue(firstDuration >= 200 && firstDuration < 400);
+
+        Thread.sleep(firstDuration + 50);
+        // 到期后过滤时恢复
+        assertSame(snapshot, detector.filter(snapshot));
+        assertFalse(bad.getStats().isEjected(System.currentTimeMillis()));
+        assertEquals(restores + 1, RpcMetrics.get(OutlierDetector.METRIC_RESTORES));
+
+        // 再次摘除的时长翻倍
+        before = System.currentTimeMillis();
+        reportFailures(bad, 3);
+        long secondDuration = bad.getStats().getEjectedUntil() - before;
+        assertTrue(secondDuration >= 400 && secondDuration < 600);
+    }
+
+    @Test
+    public void testNeverFilterAllEndpoints() {
+        String single = serviceName + ".single";
+        cache.addServiceToCache(single, "127.0.0.1:9400");
+        ServiceSnapshot snapshot = cache.getSnapshot(single);
+        for (int i = 0; i < 3; i++) {
+            detector.reportResult(single, snapshot.getEndpoint(0), false);
+        }
+        // 单个实例时可摘除的数量为0
+        assertFalse(snapshot.getEndpoint(0).getStats().isEjected(System.currentTimeMillis()));
+        assertSame(snapshot, detector.filter(snapshot));
+    }
+
+    @Test
+    public void testDisabled() {
+        KRpcConfig config = new KRpcConfig();
+        config.setOutlierDetection(false);
+        config.setOutlierConsecutiveFailures(1);
+        OutlierDetector disabled = new OutlierDetector(cache, config);
+        ServiceSnapshot snapshot = cache.getSnapshot(serviceName);
+        disabled.reportResult(serviceName, snapshot.getEndpoint(0), false);
+        assertFalse(snapshot.getEndpoint(0).getStats().isEjected(System.currentTimeMillis()));
+        assertSame(snapshot, disabled.filter(snapshot));
+        disabled.close();
+    }
+}
@@ -0,0 +1,93 @@
+package com.kama.test.ratelimit;
+
+import com.kama.server.ratelimit.RateLimit;
+import com.kama.server.ratelimit.impl.TokenBucketRateLimitImpl;
+import com.kama.server.ratelimit.provider.RateLimitProvider;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName TokenBucketRateLimitTest
+ * @Description 令牌桶限流测试类
+ * @Author Tong
+ * @LastChangeDate 2024-12-13 18:00
+ * @Version v5.0
+ */
+public class TokenBucketRateLimitTest {
+
+    @Test
+    public void testCapacityThenReject() {
+        // 每秒1个令牌，桶容量5：初始可连续取5个
+        TokenBucketRateLimitImpl rateLimit = new TokenBucketRateLimitImpl(1000, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue("full bucket should grant token " + i, rateLimit.getToken());
+        }
+        assertFalse("empty bucket should reject", rateLimit.getToken());
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        TokenBucketRateLimitImpl rateLimit = new TokenBucketRateLimitImpl(20, 2);
+        assertTrue(rateLimit.getToken());
+        assertTrue(rateLimit.getToken());
+        assertFalse(rateLimit.getToken());
+        // 等待足够生成一个令牌的时间
+        Thread.sleep(30);
+        assertTrue("token should be refilled", rateLimit.getToken());
+        // 空闲再久也不超过桶容量
+        Thread.sleep(200);
+        assertEquals(2, rateLimit.availableTokens());
+    }
+
+    @Test
+    public void testSubMillisecondRate() throws InterruptedException {
+        // 每秒10000个令牌，即每0.1ms一个
+        TokenBucketRateLimitImpl rateLimit = TokenBucketRateLimitImpl.perSecond(10_000, 1);
+        assertTrue(rateLimit.getToken());
+        Thread.sleep(5);
+        assertTrue("sub-millisecond rate should refill within 5ms", rateLimit.getToken());
+    }
+
+    @Test
+    public void testConcurrentGrantsNeverExceedCapacity() throws InterruptedException {
+        // 令牌生成很慢，测试期间只能取到初始的100个
+        TokenBucketRateLimitImpl rateLimit = new TokenBucketRateLimitImpl(60_000, 100);
+        int threads = 16;
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (rateLimit.getToken()) {
+                        granted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(100, granted.get());
+    }
+
+    @Test
+    public void testMethodLimitOverridesInterfaceLimit() {
+        RateLimitProvider provider = new RateLimitProvider();
+        RateLimit interfaceLimit = () -> true;
+        RateLimit methodLimit = () -> false;
+        provider.setRateLimit("UserService", interfaceLimit);
+        provider.setRateLimit("UserService", "insertUserId", methodLimit);
+
+        assertSame(methodLimit, provider.getRateLimit("UserService", "insertUserId"));
+        assertSame(interfaceLimit, provider.getRateLimit("UserService", "getUserByUserId"));
+        assertSame(interfaceLimit, provider.getRateLimit("UserService"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.kama.test.ratelimit;
+
+import com.kama.config.KRpcConfig;
+import com.kama.metric.RpcMetrics;
+import com.kama.server.netty.NettyRpcServerHandler;
+import com.kama.server.provider.ServiceProvider;
+import com.kama.server.ratelimit.impl.VegasConcurrencyLimitImpl;
+import com.kama.server.ratelimit.provider.RateLimitProvider;
+import common.message.RpcRequest;
+import common.message.RpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * @ClassName VegasConcurrencyLimitTest
+ * @Description 自适应并发限流测试类
+ * @Author Tong
+ * @LastChangeDate 2024-12-18 11:30
+ * @Version v5.0
+ */
+public class VegasConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void testLimitsInFlight() {
+        VegasConcurrencyLimitImpl limit = new VegasConcurrencyLimitImpl("test.inflight", 3, 10);
+        assertTrue(limit.getToken());
+        assertTrue(limit.getToken());
+        assertTrue(limit.getToken());
+        assertFalse("should reject beyond limit", limit.getToken());
+        assertEquals(1, limit.getRejected());
+
+        limit.release(FAST);
+        assertEquals(2, limit.getInFlight());
+        assertTrue("released permit should be reusable", limit.getToken());
+    }
+
+    @Test
+    public void testLimitGrowsWithoutQueueing() {
+        VegasConcurrencyLimitImpl limit = new VegasConcurrencyLimitImpl("test.grow", 10, 100);
+        // 并发用满且耗时稳定：没有排队，上限应上调
+        for (int round = 0; round < 20; round++) {
+            fillAndRelease(limit, FAST);
+        }
+        assertTrue("limit should grow, got " + limit.getLimit(), limit.getLimit() > 10);
+        assertTrue(limit.getLimit() <= 100);
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyRises() {
+        VegasConcurrencyLimitImpl limit = new VegasConcurrencyLimitImpl("test.shrink", 50, 100);
+        fillAndRelease(limit, FAST);
+        int before = limit.getLimit();
+        // 耗时变为原来的20倍，说明请求在排队，上限应下调
+        for (int round = 0; round < 5; round++) {
+            fillAndRelease(limit, SLOW);
+        }
+        assertTrue("limit should shrink, before " + before + " after " + limit.getLimit(), limit.getLimit() < before);
+    }
+
+    @Test
+    public void testMetrics() {
+        VegasConcurrencyLimitImpl limit = new VegasConcurrencyLimitImpl("test.metrics", 1, 10);
+        limit.getToken();
+        limit.getToken();
+        String prefix = VegasConcurrencyLimitImpl.METRIC_PREFIX + "test.metrics";
+        assertEquals(1, RpcMetrics.get(prefix + ".limit"));
+        assertEquals(1, RpcMetrics.get(prefix + ".inflight"));
+        assertEquals(1, RpcMetrics.get(prefix + ".rejected"));
+    }
+
+    @Test
+    public void testLimitShrinksWhenExecutorQueues() throws Exception {
+        KRpcConfig config = new KRpcConfig();
+        config.setRateLimitType(RateLimitProvider.VEGAS);
+        config.setConcurrencyLimitInitial(20);
+        config.setConcurrencyLimitMax(100);
+        // 单个业务线程，并发请求只能在线程池中排队
+        config.setExecutorThreads(1);
+        config.setExecutorQueueCapacity(100);
+        config.setLocalWarmupIterations(0);
+        ServiceProvider provider = new ServiceProvider("127.0.0.1", 0, config, (clazz, address) -> {
+        });
+        provider.provideServiceInterface(new EchoServiceImpl());
+        VegasConcurrencyLimitImpl limit = (VegasConcurrencyLimitImpl) provider.getRateLimitProvider()
+                .getRateLimit(EchoService.class.getName(), "echo");
+        ResponseCounter counter = new ResponseCounter(new Semaphore(1));
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new NettyRpcServerHandler(provider));
+        try {
+            // 逐个发送，测得无排队时的耗时
+            send(channel, counter, 50);
+            assertEquals(20, limit.getLimit());
+
+            // 客户端保持的并发远高于单线程的处理能力，耗时随排队增长，上限应下调
+            counter.permits.release(39);
+            send(channel, counter, 300);
+            assertTrue("limit should shrink with executor queueing, got " + limit.getLimit(), limit.getLimit() < 20);
+            assertTrue(counter.rejected.get() > 0);
+            counter.permits.acquire(40);
+            assertEquals(0, limit.getInFlight());
+        } finally {
+            channel.finishAndReleaseAll();
+            provider.getExecutorProvider().shutdown();
+        }
+    }
+
+    // 持续发送请求，直到有 count 个请求被处理；被限流时稍作等待
+    private void send(EmbeddedChannel channel, ResponseCounter counter, int count) throws InterruptedException {
+        int target = counter.completed.get() + count;
+        while (counter.completed.get() < target) {
+            counter.permits.acquire();
+            int rejected = counter.rejected.get();
+            channel.writeInbound(RpcRequest.builder()
+                    .interfaceName(EchoService.class.getName())
+                    .methodName("echo")
+                    .params(new Object[]{1})
+                    .paramsType(new Class<?>[]{int.class})
+                    .build());
+            if (counter.rejected.get() > rejected) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    public interface EchoService {
+        int echo(int value);
+    }
+
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public int echo(int value) {
+            LockSupport.parkNanos(FAST);
+            return value;
+        }
+    }
+
+    // 统计服务端写回的响应，每个响应归还一个客户端并发许可；不向下传递，业务线程与测试线程不会同时操作channel
+    private static class ResponseCounter extends ChannelOutboundHandlerAdapter {
+        private final Semaphore permits;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+
+        private ResponseCounter(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            if (((RpcResponse) msg).getCode() == 429) {
+                rejected.incrementAndGet();
+            } else {
+                completed.incrementAndGet();
+            }
+            permits.release();
+            promise.setSuccess();
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+        }
+    }
+
+    // 占满当前上限后全部以给定耗时归还
+    private void fillAndRelease(VegasConcurrencyLimitImpl limit, long latencyNanos) {
+        int acquired = 0;
+        while (limit.getToken()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limit.release(latencyNanos);
+        }
+    }
+}
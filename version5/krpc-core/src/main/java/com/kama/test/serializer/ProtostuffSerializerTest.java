@@ -57,7 +57,7 @@ public class ProtostuffSerializerTest {
     public void testDeserializeNullBytes() {
         // 测试反序列化 null 字节数组
         try {
-            serializer.deserialize(null, 1);
+            serializer.deserialize((byte[]) null, 1);
             fail("反序列化 null 字节数组时应抛出 IllegalArgumentException");
         } catch (IllegalArgumentException e) {
             assertEquals("Cannot deserialize null or empty byte array", e.getMessage());
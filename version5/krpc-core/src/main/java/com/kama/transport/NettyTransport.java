@@ -0,0 +1,158 @@
+package com.kama.transport;
+
+import com.kama.config.KRpcConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @ClassName NettyTransport
+ * @Description 按配置选择传输实现（nio/epoll/io_uring），原生传输不可用时回退为nio
+ * @Author Tong
+ * @LastChangeDate 2024-12-10 15:10
+ * @Version v5.0
+ */
+@Slf4j
+public class NettyTransport {
+    //io_uring 位于 netty-incubator-transport-native-io_uring 中，未引入时按不可用处理
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private final TransportType type;
+    private final boolean tcpNoDelay;
+    private final boolean reusePort;
+    private final boolean edgeTriggered;
+
+    private NettyTransport(TransportType type, KRpcConfig config) {
+        this.type = type;
+        this.tcpNoDelay = config.getTcpNoDelay();
+        this.reusePort = config.getReusePort();
+        this.edgeTriggered = config.getEpollEdgeTriggered();
+    }
+
+    public static NettyTransport create(KRpcConfig config) {
+        TransportType requested = TransportType.of(config.getTransport());
+        TransportType actual = resolve(requested);
+        log.info("使用传输实现: {}（配置: {}）", actual.getName(), requested.getName());
+        return new NettyTransport(actual, config);
+    }
+
+    //检查原生传输是否可用，不可用则回退为nio
+    private static TransportType resolve(TransportType requested) {
+        switch (requested) {
+            case EPOLL:
+                if (Epoll.isAvailable()) {
+                    return TransportType.EPOLL;
+                }
+                log.warn("epoll 不可用，回退为 nio，原因: {}", String.valueOf(Epoll.unavailabilityCause()));
+                return TransportType.NIO;
+            case IO_URING:
+                if (isIoUringAvailable()) {
+                    return TransportType.IO_URING;
+                }
+                log.warn("io_uring 不可用，回退为 nio");
+                return TransportType.NIO;
+            default:
+                return TransportType.NIO;
+        }
+    }
+
+    public TransportType getType() {
+        return type;
+    }
+
+    //创建事件循环组，nThreads为0时使用netty默认线程数
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        switch (type) {
+            case EPOLL:
+                return new EpollEventLoopGroup(nThreads);
+            case IO_URING:
+                return newInstance("IOUringEventLoopGroup", EventLoopGroup.class, nThreads);
+            default:
+                return new NioEventLoopGroup(nThreads);
+        }
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        switch (type) {
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            case IO_URING:
+                return loadClass("IOUringServerSocketChannel", ServerChannel.class);
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        switch (type) {
+            case EPOLL:
+                return EpollSocketChannel.class;
+            case IO_URING:
+                return loadClass("IOUringSocketChannel", SocketChannel.class);
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    //服务端通道参数
+    public void configure(ServerBootstrap serverBootstrap) {
+        serverBootstrap.channel(serverChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (type == TransportType.EPOLL) {
+            //SO_REUSEPORT 允许多个服务端进程绑定同一端口，由内核分发连接
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, reusePort)
+                    .childOption(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+    }
+
+    //客户端通道参数
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.channel(socketChannelClass())
+                .option(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (type == TransportType.EPOLL) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+    }
+
+    private EpollMode epollMode() {
+        return edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+    }
+
+    private static boolean isIoUringAvailable() {
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_PACKAGE + "IOUring");
+            return (Boolean) ioUring.getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static <T> Class<? extends T> loadClass(String simpleName, Class<T> type) {
+        try {
+            return Class.forName(IO_URING_PACKAGE + simpleName).asSubclass(type);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("加载 io_uring 传输失败: " + simpleName, e);
+        }
+    }
+
+    private static <T> T newInstance(String simpleName, Class<T> type, int nThreads) {
+        try {
+            return loadClass(simpleName, type).getConstructor(int.class).newInstance(nThreads);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建 io_uring 事件循环组失败", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.kama.transport;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @ClassName TransportType
+ * @Description 网络传输实现类型
+ * @Author Tong
+ * @LastChangeDate 2024-12-10 15:10
+ * @Version v5.0
+ */
+@Slf4j
+public enum TransportType {
+    NIO("nio"),
+    EPOLL("epoll"),
+    IO_URING("io_uring");
+
+    private final String name;
+
+    TransportType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //根据配置名称获取传输类型，未知名称回退为nio
+    public static TransportType of(String name) {
+        for (TransportType type : values()) {
+            if (type.name.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        log.warn("未知的传输类型: {}，使用 nio", name);
+        return NIO;
+    }
+}
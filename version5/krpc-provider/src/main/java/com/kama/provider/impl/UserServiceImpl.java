@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @ClassName UserServiceImpl
@@ -37,5 +38,11 @@ public class UserServiceImpl implements UserService {
         // 假设插入数据返回用户ID
         return user.getId();
     }
+
+    @Override
+    public CompletableFuture<User> getUserByUserIdAsync(Integer id) {
+        // 模拟异步查询，服务端在future完成后再写回响应
+        return CompletableFuture.supplyAsync(() -> getUserByUserId(id));
+    }
 }
 